@@ -0,0 +1,161 @@
+// Ana Wu, Pace University, April 2016
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * AcceptanceCriterion
+ * Decides whether the annealing loop of SimulatedAnnealing and SAForDPSO moves to a neighbor. The cooling schedule
+ * still sets the moves per level and when to stop; the criterion only sees the objective values:
+ *   metropolis   accept a worsening delta with probability exp(delta * scale / t), the original rule
+ *   threshold    threshold accepting: accept any delta >= -t / scale, the delta Metropolis accepts with probability 1/e
+ *   deluge       great deluge: accept any neighbor at or above a water level; at every level the water rises
+ *                to t / scale below the best objective value seen, if that is higher, and never sinks
+ *   late         late acceptance hill climbing: accept a neighbor no worse than the current solution of
+ *                historyLength moves ago, kept in a ring of floats
+ * Improving moves are always accepted. Apart from metropolis, a move costs comparisons only: no exp() and
+ * no random number. late ignores the temperature, so its acceptance rates say nothing about it; the solvers
+ * give it the fixed schedule instead of the adaptive one (see usesTemperature()).
+ */
+public interface AcceptanceCriterion {
+  // Names accepted by create()
+  public static final String[] NAMES = {"metropolis", "threshold", "deluge", "late"};
+
+  // Start from a solution with objective value @objValue
+  public void start(float objValue);
+
+  // Start a level of @moves moves at temperature @t of the cooling schedule
+  public void startLevel(double t, int moves);
+
+  // Return true to move from a solution with @currObjValue to a neighbor with @newObjValue
+  public boolean accept(float currObjValue, float newObjValue, Random r);
+
+  // Return false if the temperature does not affect accept(), so an adaptive schedule cannot steer it
+  public default boolean usesTemperature() {
+    return true;
+  }
+
+  // Create the criterion named @name, for the acceptance probability exp(delta * @scale / t) of the schedule
+  // Throw IllegalArgumentException for an unknown name
+  public static AcceptanceCriterion create(String name, double scale) {
+    switch (name) {
+      case "metropolis": return new Metropolis(scale);
+      case "threshold": return new ThresholdAccepting(scale);
+      case "deluge": return new GreatDeluge(scale);
+      case "late": return new LateAcceptance();
+      default: throw new IllegalArgumentException("Unknown acceptance criterion " + name);
+    }
+  }
+}
+
+// Simulated annealing acceptance
+class Metropolis implements AcceptanceCriterion {
+  private final double scale;
+  private double factor;                  // scale / t of the current level
+
+  Metropolis(double scale) {
+    this.scale = scale;
+  }
+
+  @Override
+  public void start(float objValue) {
+  }
+
+  @Override
+  public void startLevel(double t, int moves) {
+    factor = scale / t;
+  }
+
+  @Override
+  public boolean accept(float currObjValue, float newObjValue, Random r) {
+    float delta = newObjValue - currObjValue;
+    return (delta >= 0) || (r.nextDouble() < Math.exp(delta * factor));
+  }
+}
+
+// Threshold accepting (Dueck and Scheuer, 1990)
+class ThresholdAccepting implements AcceptanceCriterion {
+  private final double scale;
+  private float threshold;                // Largest worsening accepted in the current level
+
+  ThresholdAccepting(double scale) {
+    this.scale = scale;
+  }
+
+  @Override
+  public void start(float objValue) {
+  }
+
+  @Override
+  public void startLevel(double t, int moves) {
+    threshold = (float) (t / scale);
+  }
+
+  @Override
+  public boolean accept(float currObjValue, float newObjValue, Random r) {
+    return newObjValue >= currObjValue - threshold;
+  }
+}
+
+// Great deluge (Dueck, 1993), for maximization: the water level only rises
+class GreatDeluge implements AcceptanceCriterion {
+  private final double scale;
+  private float best;                     // Best objective value seen
+  private float level;                    // Water level
+
+  GreatDeluge(double scale) {
+    this.scale = scale;
+  }
+
+  @Override
+  public void start(float objValue) {
+    best = objValue;
+    level = -Float.MAX_VALUE;
+  }
+
+  @Override
+  public void startLevel(double t, int moves) {
+    level = Math.max(level, best - (float) (t / scale));  // Rain: up to t / scale below the best
+  }
+
+  @Override
+  public boolean accept(float currObjValue, float newObjValue, Random r) {
+    if (newObjValue < currObjValue && newObjValue < level)
+      return false;
+    if (newObjValue > best)
+      best = newObjValue;
+    return true;
+  }
+}
+
+// Late acceptance hill climbing (Burke and Bykov, 2017)
+class LateAcceptance implements AcceptanceCriterion {
+
+  // parameters for adjustment
+  private int historyLength = 1000;       // Moves between a solution and the one it is compared with
+
+  private final float[] history = new float[historyLength];  // Current objective values of the last moves
+  private int next;                       // Ring index of the oldest entry
+
+  @Override
+  public void start(float objValue) {
+    Arrays.fill(history, objValue);
+    next = 0;
+  }
+
+  @Override
+  public void startLevel(double t, int moves) {
+  }
+
+  @Override
+  public boolean accept(float currObjValue, float newObjValue, Random r) {
+    boolean accepted = newObjValue >= currObjValue || newObjValue >= history[next];
+    history[next] = accepted ? newObjValue : currObjValue;
+    next = (next + 1 == historyLength) ? 0 : next + 1;
+    return accepted;
+  }
+
+  @Override
+  public boolean usesTemperature() {
+    return false;
+  }
+}
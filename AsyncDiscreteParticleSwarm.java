@@ -0,0 +1,267 @@
+// Ana Wu, Pace University, April 2016
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Asynchronous Discrete Particle Swarm Optimization
+ * Same particle model as DiscreteParticleSwarm, without the generational barrier:
+ * the swarm is split among worker threads, and each worker keeps updating and evaluating
+ * its own particles one at a time, reading the latest pbest of the neighbors.
+ *
+ * Process:
+ * 1.Initialize position and velocity for each particle randomly;
+ * 2.Each worker loops over its particles:
+ *   a)Identify the best neighbor from the published pbests, update the velocity, then the position;
+ *   b)Evaluate the new position. If it beats the particle pbest, publish it as the new pbest;
+ *     if it is feasible and beats gbest, publish it as the new gbest;
+ *   c)Exit when the update budget is spent, on stagnation or when the run control says stop.
+ *
+ * Every pbest and gbest is an Incumbent: an immutable snapshot behind an AtomicReference,
+ * replaced by compare-and-set. Readers never block writers, and a reader always sees a value
+ * together with the solution it belongs to. Positions and velocities are owned by one worker.
+ */
+
+public class AsyncDiscreteParticleSwarm implements Solver {
+
+  // parameters for adjustment
+  private int particleNumber = 50;          // Particle numbers
+  private int iterationTimes = 2900;        // Updates per particle, on average
+  private float maxVelocity = 6.0f;         // Velocity in each dimension is between -maxVelocity to maxVelocity
+  private float weight = 1.0f;              // inertia weight of velocity
+  private float c1 = 2.0f;                  // Cognition learning rate
+  private float c2 = 2.0f;                  // Social learning rate
+  private int topologyType = 0;             // 0:Global topology. 1:Ring topology.
+  private int workerNumber = Runtime.getRuntime().availableProcessors(); // Worker threads
+
+  // variables
+  private Topology topology;
+  private int materialNum;
+  private int deptNum;
+  private int[][][] positions;
+  private float[][][] velocities;
+  private long[] positionHashes;            // Zobrist hash of each position, updated cell by cell
+  private Incumbent[] pBest;                // Published pbest of each particle, fitness value included penalty
+  private Incumbent gBest;                  // Best feasible solution of the swarm
+  private RunControl control = new RunControl();  // Deadline, cancellation and live incumbent
+  private final LongAdder updates = new LongAdder();  // Particle updates done by all workers
+  private final AtomicLong lastImprovement = new AtomicLong(); // Value of updates when gbest last improved
+  private long runNanos;                    // Duration of the last run
+
+  // Use @control to stop the run early and to publish the best solution while running
+  @Override
+  public void setRunControl(RunControl control) {
+    this.control = control;
+  }
+
+  // Take the swarm parameters from @config
+  @Override
+  public void configure(SolverConfig config) {
+    particleNumber = config.getParticleNumber();
+    weight = config.getWeight();
+    c1 = config.getC1();
+    c2 = config.getC2();
+    maxVelocity = config.getMaxVelocity();
+    topologyType = config.getTopologyType();
+  }
+
+  public void setWorkerNumber(int workerNumber) {
+    this.workerNumber = Math.max(1, workerNumber);
+  }
+
+  // Use asynchronous DPSO to find and return the maximum objective value
+  // Return the best solution through bestSolution[][]
+  @Override
+  public float run(int bestSolution[][], Utilities u) {
+    materialNum = u.getMaterialNumber();
+    deptNum = u.getDeptNumber();
+    positions = new int[particleNumber][materialNum][deptNum];
+    velocities = new float[particleNumber][materialNum][deptNum];
+    positionHashes = new long[particleNumber];
+    pBest = new Incumbent[particleNumber];
+    gBest = new Incumbent();
+    updates.reset();
+    lastImprovement.set(0);
+    topology = (0 == topologyType) ? new GlobalTopology(particleNumber) : new RingTopology(particleNumber);
+
+    // Step 1: initialization
+    Random random = u.getRandom();
+    for (int i = 0; i < particleNumber; ++i) {
+      boolean feasible = u.randomFeasibleSolution(positions[i]);
+      positionHashes[i] = u.getZobrist().hash(positions[i]);
+      for (int m = 0; m < materialNum; ++m) {
+        for (int d = 0; d < deptNum; ++d)
+          velocities[i][m][d] = random.nextFloat() * (maxVelocity * 2) - maxVelocity;
+      }
+      pBest[i] = new Incumbent();
+      float objValue = u.cachedObjectiveValue(positions[i], positionHashes[i]);
+      float penalty = u.cachedPenaltyValue(positions[i], positionHashes[i]);
+      pBest[i].offer(objValue - penalty, positions[i]);
+      if (feasible && penalty == 0.0f)
+        offerGlobal(objValue, positions[i]);
+    }
+    int seeded = 0;                               // Start one particle from the incumbent if there is one
+    for (int i = 1; i < particleNumber; ++i) {
+      if (pBest[i].getBestObjValue() < pBest[seeded].getBestObjValue())
+        seeded = i;
+    }
+    float incumbentValue = control.pullIncumbent(positions[seeded], gBest.getBestObjValue());
+    if (incumbentValue != -Float.MAX_VALUE) {
+      positionHashes[seeded] = u.getZobrist().hash(positions[seeded]);
+      pBest[seeded].offer(incumbentValue, positions[seeded]);
+      gBest.offer(incumbentValue, positions[seeded]);
+    }
+
+    // Step 2: every worker updates its own slice of the swarm until the budget is spent
+    int workers = Math.min(workerNumber, particleNumber);
+    long budget = (long) iterationTimes * particleNumber;
+    long startTime = System.nanoTime();
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int w = 0; w < workers; ++w) {
+        final int from = w * particleNumber / workers;
+        final int to = (w + 1) * particleNumber / workers;
+        final Utilities fork = u.fork();          // Own random number generator per worker
+        futures.add(pool.submit(() -> work(from, to, budget, fork)));
+      }
+      for (Future<?> f : futures)
+        f.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      pool.shutdownNow();
+      runNanos = System.nanoTime() - startTime;
+    }
+    return gBest.copyBestSolution(bestSolution);
+  }
+
+  // Update particles @from to @to - 1 over and over, until @budget updates are done by all workers
+  private void work(int from, int to, long budget, Utilities u) {
+    Random random = u.getRandom();
+    ZobristTable zobrist = u.getZobrist();
+    int[][] lBest = new int[materialNum][deptNum];   // pbest of the particle being updated
+    int[][] nBest = new int[materialNum][deptNum];   // pbest of its best neighbor
+    long stagnation = (long) control.getStagnationLimit() * particleNumber;
+    while (updates.sum() < budget && !control.shouldStop()) {
+      for (int i = from; i < to; ++i) {
+        pBest[i].copyBestSolution(lBest);
+        pBest[bestNeighbor(i)].copyBestSolution(nBest);
+        updateVelocity(velocities[i], positions[i], lBest, nBest, random);
+        long hash = updatePosition(positions[i], velocities[i], positionHashes[i], random, zobrist);
+        positionHashes[i] = hash;
+        float objValue = u.cachedObjectiveValue(positions[i], hash);
+        float penalty = u.cachedPenaltyValue(positions[i], hash);
+        pBest[i].offer(objValue - penalty, positions[i]);   // Only this worker writes pbest of particle i
+        if (penalty == 0.0f)
+          offerGlobal(objValue, positions[i]);
+        updates.increment();
+        control.countIteration();
+      }
+      if (stagnation > 0 && updates.sum() - lastImprovement.get() > stagnation) {
+        if (!control.isRestartFromIncumbent() || !seedFromIncumbent(from, u))
+          break;                              // Nothing better to restart from
+      }
+    }
+  }
+
+  // Offer a feasible solution to gbest, and to the run control if it is a new gbest
+  private void offerGlobal(float objValue, int x[][]) {
+    if (gBest.offer(objValue, x)) {
+      lastImprovement.set(updates.sum());
+      control.publish(objValue, x);
+    }
+  }
+
+  // Restart particle @i from the incumbent if it beats gbest, return true if it did
+  private boolean seedFromIncumbent(int i, Utilities u) {
+    float seeded = control.pullIncumbent(positions[i], gBest.getBestObjValue());
+    if (seeded == -Float.MAX_VALUE)
+      return false;
+    positionHashes[i] = u.getZobrist().hash(positions[i]);
+    pBest[i].offer(seeded, positions[i]);
+    gBest.offer(seeded, positions[i]);
+    lastImprovement.set(updates.sum());
+    return true;
+  }
+
+  // Index of the neighbor of particle @i with the best published pbest
+  private int bestNeighbor(int i) {
+    int best = i;
+    float bestFitness = pBest[i].getBestObjValue();
+    for (int k : topology.getNeighbors(i)) {
+      float f = pBest[k].getBestObjValue();
+      if (f > bestFitness) {
+        best = k;
+        bestFitness = f;
+      }
+    }
+    return best;
+  }
+
+  private void updateVelocity(float[][] velocity, int[][] position, int[][] lBest, int[][] nBest, Random random) {
+    for (int i = 0; i < materialNum; ++i) {
+      for (int j = 0; j < deptNum; ++j) {
+        float newV = weight * velocity[i][j] + c1 * random.nextFloat() * (lBest[i][j] - position[i][j])
+                     + c2 * random.nextFloat() * (nBest[i][j] - position[i][j]);
+        velocity[i][j] = Math.max(-maxVelocity, Math.min(maxVelocity, newV));
+      }
+    }
+  }
+
+  // Return the hash of the new position, updated from @hash for every changed cell
+  private long updatePosition(int[][] position, float[][] velocity, long hash, Random random, ZobristTable zobrist) {
+    for (int i = 0; i < materialNum; ++i) {
+      for (int j = 0; j < deptNum; ++j) {
+        float sigmodial = (float) (1 / (1 + Math.exp(-velocity[i][j])));
+        int newValue = (random.nextFloat() < sigmodial) ? 1 : 0;
+        if (position[i][j] != newValue) {
+          position[i][j] = newValue;
+          hash ^= zobrist.key(i, j);
+        }
+      }
+    }
+    return hash;
+  }
+
+  // Particle updates done in the last run
+  public long getUpdates() {
+    return updates.sum();
+  }
+
+  // Throughput of the last run in particle updates per second
+  public double getUpdatesPerSecond() {
+    return (runNanos == 0) ? 0 : updates.sum() * 1e9 / runNanos;
+  }
+
+  public static void main(String[] args) {
+    Utilities u = new Utilities(); // Create a Utilities object
+    CommandLine cl = new CommandLine(args, "10.txt"); // Default data file name is 10.txt
+    u.readGraph(cl.getFileName());
+
+    int bestSolution[][] = new int[u.getMaterialNumber()][u.getDeptNumber()]; // Allocate space for best solution
+    AsyncDiscreteParticleSwarm pso = new AsyncDiscreteParticleSwarm();
+    pso.setRunControl(cl.createRunControl(u)); // Optional time limit and stagnation stop
+    pso.configure(cl.getConfig());             // Optional tuned parameters
+    if (cl.getWorkers() > 0)
+      pso.setWorkerNumber(cl.getWorkers());    // Worker threads, one per processor by default
+    u.startRun();                                  // Mark the start of run
+    float bestObjValue = pso.run(bestSolution, u); // Run asynchronous Particle Swarm Optimization
+    u.endRun();                                    // Mark the end of run
+    cl.closeEvents();                              // Let --events print the last improvements
+    // Print out results
+    u.reportResult("Asynchronous Particle Swarm Optimization", bestObjValue, bestSolution);
+    System.out.printf("Workers = %d   particle updates = %d   updates per second = %.0f%n",
+                      Math.min(pso.workerNumber, pso.particleNumber), pso.getUpdates(), pso.getUpdatesPerSecond());
+    // Append results in file costs.txt
+    u.appendBestPartition("Asynchronous Particle Swarm Optimization", bestObjValue, bestSolution);
+  }
+}
@@ -0,0 +1,175 @@
+// Ana Wu, Pace University, April 2016
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Checkpoint
+ * Binary snapshot of the full state of a solver, written at the end of an iteration so that a resumed
+ * run continues exactly where the checkpointed one was: with the same seed, a run resumed from a
+ * checkpoint gives the same result as an uninterrupted run.
+ *
+ * Format: int magic, UTF solver name, int materialNum, int deptNum, then the solver state.
+ * Solutions are written as bit sets, (deptNum + 63) / 64 longs per row.
+ *
+ * The state is serialized to memory while the solver waits, which takes a few milliseconds;
+ * the file is written by a background thread, to <file>.tmp first and then renamed over <file>,
+ * so a crash while writing leaves the previous checkpoint intact.
+ */
+public class Checkpoint {
+  private static final int MAGIC = 0x4C4D4331;   // "LMC1"
+
+  // One background thread, gone after a second without writes, so it never keeps the JVM alive for long
+  private static final ThreadPoolExecutor writer =
+      new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+  static {
+    writer.allowCoreThreadTimeOut(true);
+  }
+
+  // Open the checkpoint of solver @solverName to resume from, if @control asks for it
+  // Return null to start a fresh run: no resume asked, or no checkpoint file yet
+  public static Input resume(RunControl control, String solverName, Utilities u) {
+    String fileName = control.getCheckpointFile();
+    if (!control.isResume() || fileName == null)
+      return null;
+    if (!new File(fileName).exists()) {
+      System.out.println("No checkpoint " + fileName + ", starting a fresh run");
+      return null;
+    }
+    try {
+      return new Input(fileName, solverName, u);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Solver state being written to memory, see commit()
+  public static class Output extends DataOutputStream {
+    private final int deptNum;
+
+    public Output(String solverName, Utilities u) {
+      super(new ByteArrayOutputStream());
+      deptNum = u.getDeptNumber();
+      try {
+        writeInt(MAGIC);
+        writeUTF(solverName);
+        writeInt(u.getMaterialNumber());
+        writeInt(deptNum);
+      } catch (IOException e) {
+        throw new AssertionError(e);   // Not thrown by a ByteArrayOutputStream
+      }
+    }
+
+    public void writeSolution(int x[][]) throws IOException {
+      for (int[] row : x) {
+        for (int base = 0; base < deptNum; base += 64) {
+          long bits = 0;
+          for (int j = base; j < Math.min(base + 64, deptNum); ++j)
+            bits |= (long) row[j] << (j - base);
+          writeLong(bits);
+        }
+      }
+    }
+
+    public void writeMatrix(float v[][]) throws IOException {
+      for (float[] row : v) {
+        for (float f : row)
+          writeFloat(f);
+      }
+    }
+
+    public void writeFloats(float v[]) throws IOException {
+      for (float f : v)
+        writeFloat(f);
+    }
+
+    public void writeRandom(Random r) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+        out.writeObject(r);
+      }
+      writeInt(bytes.size());
+      bytes.writeTo(this);
+    }
+
+    // Write the state to @fileName in the background
+    public void commit(String fileName) {
+      byte[] state = ((ByteArrayOutputStream) out).toByteArray();
+      writer.execute(() -> {
+        try {
+          Path target = Paths.get(fileName);
+          Path tmp = Paths.get(fileName + ".tmp");
+          Files.write(tmp, state);
+          Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+          System.out.println("Checkpoint not written: " + e.getMessage());
+        }
+      });
+    }
+  }
+
+  // Solver state read back from a checkpoint file
+  public static class Input extends DataInputStream {
+    private final int deptNum;
+
+    public Input(String fileName, String solverName, Utilities u) throws IOException {
+      super(new BufferedInputStream(new FileInputStream(fileName)));
+      deptNum = u.getDeptNumber();
+      if (readInt() != MAGIC)
+        throw new IOException(fileName + " is not a checkpoint");
+      String name = readUTF();
+      if (!name.equals(solverName))
+        throw new IOException(fileName + " is a checkpoint of " + name + ", not of " + solverName);
+      if (readInt() != u.getMaterialNumber() || readInt() != deptNum)
+        throw new IOException(fileName + " is a checkpoint of another instance");
+    }
+
+    public void readSolution(int x[][]) throws IOException {
+      for (int[] row : x) {
+        for (int base = 0; base < deptNum; base += 64) {
+          long bits = readLong();
+          for (int j = base; j < Math.min(base + 64, deptNum); ++j)
+            row[j] = (int) (bits >>> (j - base)) & 1;
+        }
+      }
+    }
+
+    public void readMatrix(float v[][]) throws IOException {
+      for (float[] row : v) {
+        for (int j = 0; j < row.length; ++j)
+          row[j] = readFloat();
+      }
+    }
+
+    public void readFloats(float v[]) throws IOException {
+      for (int i = 0; i < v.length; ++i)
+        v[i] = readFloat();
+    }
+
+    public Random readRandom() throws IOException {
+      byte[] bytes = new byte[readInt()];
+      readFully(bytes);
+      try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+        return (Random) in.readObject();
+      } catch (ClassNotFoundException e) {
+        throw new IOException(e);
+      }
+    }
+  }
+}
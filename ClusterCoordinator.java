@@ -0,0 +1,325 @@
+// Ana Wu, Pace University, April 2016
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Local cluster mode
+ * Run the algorithms in separate worker JVMs on this machine, each with its own heap and garbage collector,
+ * as a stand-in for separate nodes. Workers only share the instance file name and solutions,
+ * see ClusterProtocol, so moving them to other hosts only changes how they are started.
+ *
+ * Process:
+ * 1.Listen on a loopback port and start workerNumber ClusterWorker JVMs with the options of this JVM
+ *   (and -Xmx workerHeap if given); worker k runs algorithms[k % algorithms.length];
+ * 2.Send each worker its JOB: the instance file, the algorithm, a seed, the time left and the SolverConfig;
+ * 3.One thread per worker reads its solutions into the shared incumbent, after checking them against the
+ *   instance. Every exchangeInterval milliseconds, the incumbent goes to every worker that has not seen it;
+ * 4.At the deadline, or on cancellation, send STOP and wait up to stopGrace milliseconds for DONE.
+ * A worker that dies or breaks the protocol is dropped: its last solution stays in the incumbent and
+ * the others carry on. The run fails only if no worker ever sends a solution.
+ * Workers read the instance from its file, so an instance changed in memory (InstanceDelta, a subproblem of
+ * DecompositionSolver) is rejected: its solutions would be checked against data the workers never saw.
+ */
+public class ClusterCoordinator implements Solver {
+
+  // parameters for adjustment
+  private int workerNumber = 2;                                    // Worker JVMs
+  private String[] algorithms = {"sa", "tabu", "dpso", "dpso-sa"}; // Algorithms, given out to workers in turn
+  private String workerHeap = null;                                // -Xmx of the workers, e.g. "2g", null for the default
+  private long exchangeInterval = 500;                             // Milliseconds between incumbent exchanges
+  private long defaultTimeLimit = 10000;                           // Worker time limit if the run control has none
+  private long connectTimeout = 30000;                             // Milliseconds for all workers to connect
+  private long stopGrace = 3000;                                   // Milliseconds to wait for DONE after STOP
+
+  private RunControl control = new RunControl();   // Deadline, cancellation and shared incumbent
+  private SolverConfig config = new SolverConfig(); // Passed on to every worker
+  private final List<Worker> workers = new ArrayList<Worker>();
+  private int materialNum;
+  private int deptNum;
+
+  @Override
+  public void setRunControl(RunControl control) {
+    this.control = control;
+  }
+
+  @Override
+  public void configure(SolverConfig config) {
+    this.config = config;
+  }
+
+  public void setWorkerNumber(int workerNumber) {
+    this.workerNumber = workerNumber;
+  }
+
+  public void setAlgorithms(String algorithms[]) {
+    this.algorithms = algorithms;
+  }
+
+  public void setWorkerHeap(String workerHeap) {
+    this.workerHeap = workerHeap;
+  }
+
+  // Run the algorithms in worker JVMs on the instance file of u and return the best objective value
+  // Return the best solution through bestSolution[][]
+  // Throw IllegalArgumentException if the instance of u is not the one in its file
+  @Override
+  public float run(int bestSolution[][], Utilities u) {
+    File file = new File(u.getFileName());
+    if (!file.isFile())
+      throw new IllegalArgumentException("Cluster mode needs an instance file, not " + u.getFileName());
+    Utilities onDisk = new Utilities();
+    onDisk.readGraph(file.getPath());
+    if (onDisk.getInstance() == null || !onDisk.getInstance().hasSameData(u.getInstance()))
+      throw new IllegalArgumentException("Cluster mode solves the instance in " + u.getFileName()
+                                         + ", which differs from the one changed in memory");
+    materialNum = u.getMaterialNumber();
+    deptNum = u.getDeptNumber();
+    long remaining = control.getRemainingMillis();
+    long timeLimit = (remaining == Long.MAX_VALUE) ? defaultTimeLimit : remaining;
+    Random r = u.getRandom();
+    workers.clear();
+    List<Process> processes = new ArrayList<Process>();
+    ScheduledExecutorService exchanger = Executors.newSingleThreadScheduledExecutor();
+    try (ServerSocket server = new ServerSocket(0, workerNumber, InetAddress.getLoopbackAddress())) {
+      for (int k = 0; k < workerNumber; ++k)
+        processes.add(launch(server.getLocalPort(), k));
+      CountDownLatch finished = new CountDownLatch(workerNumber);
+      server.setSoTimeout((int) connectTimeout);
+      for (int k = 0; k < workerNumber; ++k) {
+        Socket socket;
+        try {
+          socket = server.accept();
+        } catch (SocketTimeoutException e) {
+          System.out.println("Cluster: only " + k + " of " + workerNumber + " workers connected");
+          for (int missing = k; missing < workerNumber; ++missing)
+            finished.countDown();
+          break;
+        }
+        Worker worker;
+        int number;
+        try {
+          worker = new Worker(socket, finished, u);
+          number = worker.hello();
+          worker.sendJob(file.getAbsolutePath(), algorithms[number % algorithms.length], r.nextLong(), timeLimit);
+        } catch (IOException e) {
+          System.out.println("Cluster: a worker failed to start (" + e.getMessage() + "), continuing without it");
+          try {
+            socket.close();
+          } catch (IOException closed) {
+            // Already closed
+          }
+          finished.countDown();
+          continue;
+        }
+        workers.add(worker);
+        Thread reader = new Thread(worker, "cluster-worker-" + number);
+        reader.setDaemon(true);
+        reader.start();
+      }
+      exchanger.scheduleWithFixedDelay(this::exchange, exchangeInterval, exchangeInterval, TimeUnit.MILLISECONDS);
+
+      while (!control.shouldStop() && !finished.await(50, TimeUnit.MILLISECONDS)) {
+        // Wait for the workers, the deadline or cancellation
+      }
+      for (Worker worker : workers)
+        worker.send(ClusterProtocol.STOP, null, 0);
+      finished.await(stopGrace, TimeUnit.MILLISECONDS);
+    } catch (IOException e) {
+      throw new RuntimeException("Cluster: " + e.getMessage(), e);
+    } catch (InterruptedException e) {
+      control.cancel();
+      Thread.currentThread().interrupt();
+    } finally {
+      exchanger.shutdownNow();
+      for (Worker worker : workers)
+        worker.close();
+      for (Process process : processes)
+        process.destroy();                      // Workers still running after the grace period
+    }
+    float bestObjValue = control.getIncumbent().copyBestSolution(bestSolution);
+    if (bestObjValue == -Float.MAX_VALUE)
+      throw new IllegalStateException("Cluster: no worker sent a solution");
+    return bestObjValue;
+  }
+
+  // Start worker JVM @number, connecting back to @port
+  private Process launch(int port, int number) throws IOException {
+    List<String> command = new ArrayList<String>();
+    command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+      if (!option.startsWith("-Xmx") && !option.startsWith("-agentlib") && !option.startsWith("-javaagent"))
+        command.add(option);
+    }
+    if (workerHeap != null)
+      command.add("-Xmx" + workerHeap);
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add("ClusterWorker");
+    command.add(InetAddress.getLoopbackAddress().getHostAddress());
+    command.add(Integer.toString(port));
+    command.add(Integer.toString(number));
+    return new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                                      .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+  }
+
+  // Send the incumbent to every live worker that has not seen it
+  private void exchange() {
+    int x[][] = new int[materialNum][deptNum];
+    float objValue = control.getIncumbent().copyBestSolution(x);  // Value and solution of one snapshot
+    if (objValue == -Float.MAX_VALUE)
+      return;
+    for (Worker worker : workers) {
+      if (worker.isAlive() && worker.known < objValue)
+        worker.send(ClusterProtocol.SOLUTION, x, objValue);
+    }
+  }
+
+  // Connection to one worker JVM; run() reads its messages until DONE or a failure
+  private class Worker implements Runnable {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final CountDownLatch finished;
+    private final Utilities u;
+    private int number = -1;
+    private volatile boolean alive = true;
+    volatile float known = -Float.MAX_VALUE;       // Best objective value the worker has sent or been sent
+
+    Worker(Socket socket, CountDownLatch finished, Utilities u) throws IOException {
+      this.socket = socket;
+      this.finished = finished;
+      this.u = u;
+      socket.setTcpNoDelay(true);
+      in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    int hello() throws IOException {
+      if (in.readByte() != ClusterProtocol.HELLO)
+        throw new IOException("Expected HELLO");
+      number = in.readInt();
+      return number;
+    }
+
+    void sendJob(String fileName, String algorithm, long seed, long timeLimit) throws IOException {
+      synchronized (out) {
+        out.writeByte(ClusterProtocol.JOB);
+        out.writeUTF(fileName);
+        out.writeUTF(algorithm);
+        out.writeLong(seed);
+        out.writeLong(timeLimit);
+        out.writeLong(exchangeInterval);
+        out.writeUTF(config.toString());
+        out.flush();
+      }
+    }
+
+    boolean isAlive() {
+      return alive;
+    }
+
+    // Send a message of @type, with solution x[][] and @objValue for SOLUTION; a failure drops the worker
+    void send(byte type, int x[][], float objValue) {
+      if (!alive)
+        return;
+      try {
+        synchronized (out) {
+          out.writeByte(type);
+          if (type == ClusterProtocol.SOLUTION)
+            ClusterProtocol.writeSolution(out, objValue, x);
+          out.flush();
+        }
+        if (type == ClusterProtocol.SOLUTION)
+          known = Math.max(known, objValue);
+      } catch (IOException e) {
+        drop(e.getMessage());
+      }
+    }
+
+    @Override
+    public void run() {
+      int x[][] = new int[u.getMaterialNumber()][u.getDeptNumber()];
+      try {
+        while (true) {
+          byte type = in.readByte();
+          if (type != ClusterProtocol.SOLUTION && type != ClusterProtocol.DONE)
+            throw new IOException("unexpected message " + type);
+          float objValue = ClusterProtocol.readSolution(in, x);
+          if (!u.isFeasible(x))
+            throw new IOException("infeasible solution");
+          known = Math.max(known, objValue);
+          control.publish(u.objectiveValue(x), x);   // Evaluated here, with the model of this JVM
+          if (type == ClusterProtocol.DONE)
+            break;
+        }
+        alive = false;
+        finished.countDown();
+      } catch (EOFException e) {
+        drop("connection closed");
+      } catch (IOException e) {
+        drop(e.getMessage());
+      }
+    }
+
+    // Stop talking to a dead or misbehaving worker
+    private void drop(String reason) {
+      synchronized (this) {
+        if (!alive)
+          return;
+        alive = false;
+      }
+      if (!control.shouldStop())
+        System.out.println("Cluster: lost worker " + number + " (" + reason + "), continuing without it");
+      finished.countDown();
+      close();
+    }
+
+    void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Already closed
+      }
+    }
+  }
+
+  public static void main(String args[]) {
+    Utilities u = new Utilities();                    // Create a Utilities object
+    CommandLine cl = new CommandLine(args, "10.txt"); // Default data file name is 10.txt
+    cl.configure(u);                                  // Optional random seed
+    u.readGraph(cl.getFileName());
+
+    int bestSolution[][] = new int[u.getMaterialNumber()][u.getDeptNumber()]; // Allocate space for best solution
+    ClusterCoordinator cluster = new ClusterCoordinator();
+    if (cl.getWorkers() > 0)
+      cluster.setWorkerNumber(cl.getWorkers());       // Worker JVMs, 2 by default
+    cluster.setWorkerHeap(cl.getWorkerHeap());        // Optional heap size of each worker
+    cluster.setRunControl(cl.createRunControl(u));    // Optional time limit
+    cluster.configure(cl.getConfig());                // Optional tuned parameters of all workers
+    u.startRun();                                     // Mark the start of run
+    float bestObjValue = cluster.run(bestSolution, u); // Run the workers
+    u.endRun();                                       // Mark the end of run
+    cl.closeEvents();                                 // Let --events print the last improvements
+    // Print out results
+    u.reportResult("Cluster", bestObjValue, bestSolution);
+    // Append results in file costs.txt
+    u.appendBestPartition("Cluster", bestObjValue, bestSolution);
+  }
+}
@@ -0,0 +1,87 @@
+// Ana Wu, Pace University, April 2016
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * ClusterProtocol
+ * Messages between ClusterCoordinator and ClusterWorker over a local socket, each a type byte and a body:
+ *   HELLO     worker -> coordinator   int worker number
+ *   JOB       coordinator -> worker   UTF instance file name, UTF algorithm, long seed, long time limit
+ *                                     in milliseconds, long exchange interval in milliseconds, UTF SolverConfig
+ *   SOLUTION  both ways               a new best solution, see writeSolution()
+ *   DONE      worker -> coordinator   the final best solution of the worker
+ *   STOP      coordinator -> worker   cancel the run and send DONE
+ *
+ * A solution is sent as its objective value, the amount of acquired cells and their indexes
+ * i * deptNum + j in increasing order, each as the gap to the previous one in a variable-length
+ * integer (7 bits per byte). Solutions acquire few of the materialNum * deptNum cells, so this is
+ * a few bytes per acquired cell instead of a bit per cell.
+ */
+public class ClusterProtocol {
+  public static final byte HELLO = 1;
+  public static final byte JOB = 2;
+  public static final byte SOLUTION = 3;
+  public static final byte DONE = 4;
+  public static final byte STOP = 5;
+
+  // Write solution x[][] with objective value @objValue
+  public static void writeSolution(DataOutput out, float objValue, int x[][]) throws IOException {
+    int deptNum = x[0].length;
+    int count = 0;
+    for (int[] row : x) {
+      for (int v : row)
+        count += v;
+    }
+    out.writeFloat(objValue);
+    writeVarInt(out, count);
+    long previous = -1;
+    for (int i = 0; i < x.length; ++i) {
+      for (int j = 0; j < deptNum; ++j) {
+        if (x[i][j] == 1) {
+          long cell = (long) i * deptNum + j;
+          writeVarInt(out, cell - previous);
+          previous = cell;
+        }
+      }
+    }
+  }
+
+  // Read a solution written by writeSolution() into x[][] and return its objective value
+  // Throw IOException if a cell lies outside x[][]
+  public static float readSolution(DataInput in, int x[][]) throws IOException {
+    int deptNum = x[0].length;
+    float objValue = in.readFloat();
+    long count = readVarInt(in);
+    for (int[] row : x)
+      Arrays.fill(row, 0);
+    long cell = -1;
+    for (long k = 0; k < count; ++k) {
+      cell += readVarInt(in);
+      if (cell >= (long) x.length * deptNum)
+        throw new IOException("Solution cell " + cell + " out of range");
+      x[(int) (cell / deptNum)][(int) (cell % deptNum)] = 1;
+    }
+    return objValue;
+  }
+
+  private static void writeVarInt(DataOutput out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  private static long readVarInt(DataInput in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+    throw new IOException("Malformed variable-length integer");
+  }
+}
@@ -0,0 +1,121 @@
+// Ana Wu, Pace University, April 2016
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * ClusterWorker
+ * A worker JVM of ClusterCoordinator, started as
+ *   java ClusterWorker host port workerNumber
+ *
+ * Process:
+ * 1.Connect to the coordinator, say HELLO and wait for the JOB;
+ * 2.Load the instance file and run the algorithm of the job until its time limit, like a member of a Portfolio:
+ *   when it stagnates it restarts from the incumbent if that is better, and stops otherwise;
+ * 3.Meanwhile, every exchange interval, send the best solution if it improved since the last one sent;
+ *   solutions from the coordinator go into the incumbent, to be picked up at the next restart.
+ *   STOP, or losing the connection, cancels the run;
+ * 4.Send DONE with the best solution and exit.
+ */
+public class ClusterWorker {
+
+  // parameters for adjustment
+  private static int stagnationLimit = 200;   // Iterations without improvement before a restart from the incumbent
+
+  public static void main(String args[]) throws IOException {
+    String host = args[0];
+    int port = Integer.parseInt(args[1]);
+    int workerNumber = Integer.parseInt(args[2]);
+    try (Socket socket = new Socket(host, port)) {
+      socket.setTcpNoDelay(true);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      out.writeByte(ClusterProtocol.HELLO);
+      out.writeInt(workerNumber);
+      out.flush();
+
+      if (in.readByte() != ClusterProtocol.JOB)
+        throw new IOException("Expected a job");
+      String fileName = in.readUTF();
+      String algorithm = in.readUTF();
+      long seed = in.readLong();
+      long timeLimit = in.readLong();
+      long exchangeInterval = in.readLong();
+      SolverConfig config = SolverConfig.parse(in.readUTF());
+
+      Utilities u = new Utilities();
+      u.setSeed(seed);
+      u.readGraph(fileName);
+      RunControl control = new RunControl().setTimeLimit(timeLimit);
+      control.setStagnationLimit(stagnationLimit).setRestartFromIncumbent(true);
+      Solver solver = Solver.create(algorithm);
+      solver.configure(config);
+      solver.setRunControl(control);
+
+      float[] lastSent = {-Float.MAX_VALUE};   // Objective value the coordinator knows about
+      Thread reader = new Thread(() -> receive(in, control, u, lastSent), "cluster-reader");
+      reader.setDaemon(true);
+      reader.start();
+      int sent[][] = new int[u.getMaterialNumber()][u.getDeptNumber()];
+      ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor();
+      sender.scheduleWithFixedDelay(() -> send(out, ClusterProtocol.SOLUTION, control, sent, lastSent),
+                                    exchangeInterval, exchangeInterval, TimeUnit.MILLISECONDS);
+
+      int bestSolution[][] = new int[u.getMaterialNumber()][u.getDeptNumber()];
+      solver.run(bestSolution, u);
+      sender.shutdownNow();
+      try {
+        sender.awaitTermination(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      send(out, ClusterProtocol.DONE, control, sent, new float[] {-Float.MAX_VALUE});
+    }
+    System.exit(0);                             // Solvers may leave pool threads behind
+  }
+
+  // Publish solutions from the coordinator into the incumbent of @control, without sending them back through
+  // lastSent[0]; cancel on STOP or a lost connection
+  private static void receive(DataInputStream in, RunControl control, Utilities u, float lastSent[]) {
+    int x[][] = new int[u.getMaterialNumber()][u.getDeptNumber()];
+    try {
+      while (true) {
+        byte type = in.readByte();
+        if (type == ClusterProtocol.STOP)
+          break;
+        if (type != ClusterProtocol.SOLUTION)
+          throw new IOException("Unexpected message " + type);
+        float objValue = ClusterProtocol.readSolution(in, x);
+        lastSent[0] = Math.max(lastSent[0], objValue);
+        control.publish(objValue, x);
+      }
+    } catch (IOException e) {
+      // The coordinator is gone, stop as well
+    }
+    control.cancel();
+  }
+
+  // Send the incumbent of @control as a message of @type if it beats lastSent[0], which is then updated
+  // x[][] is the buffer for the solution
+  private static void send(DataOutputStream out, byte type, RunControl control, int x[][], float lastSent[]) {
+    if (!(control.getIncumbent().getBestObjValue() > lastSent[0]))
+      return;
+    float objValue = control.getIncumbent().copyBestSolution(x);  // Value and solution of one snapshot
+    try {
+      synchronized (out) {
+        out.writeByte(type);
+        ClusterProtocol.writeSolution(out, objValue, x);
+        out.flush();
+      }
+      lastSent[0] = objValue;
+    } catch (IOException e) {
+      control.cancel();                         // The coordinator is gone
+    }
+  }
+}
@@ -0,0 +1,174 @@
+// Ana Wu, Pace University, April 2016
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * CommandLine
+ * Shared command-line handling for the solver main() methods.
+ * Usage: java <Solver> [fileName] [--time-limit milliseconds] [--stagnation iterations]
+ *                      [--neighborhood flip|reassign|exchange|compound]
+ *                      [--algorithm name] [--delta change]...
+ *                      [--seed n] [--checkpoint fileName] [--checkpoint-interval milliseconds] [--resume]
+ *                      [--gap tolerance] [--pareto weights] [--archive-capacity points] [--config name=value,...]
+ *                      [--workers n] [--worker-heap size]
+ *                      [--compact] [--events]
+ * --workers sets the worker threads of AsyncDiscreteParticleSwarm and PathRelinking and the worker JVMs of
+ * ClusterCoordinator,
+ * --worker-heap the -Xmx of those JVMs
+ * --compact keeps the DPSO swarm in bitsets and bytes, see CompactSwarm
+ * --events prints every improvement of the incumbent while the solver runs, see ImprovementPublisher
+ * --config sets tuning parameters, see SolverConfig and RacingTuner
+ * --pareto switches SA (sweeping that many weights) and DPSO to the multi-objective mode, see ParetoArchive
+ * --algorithm and --delta are read by WarmStart, see Solver.create() and InstanceDelta;
+ * --algorithm is also the solver of the starts of PathRelinking
+ */
+public class CommandLine {
+  private String fileName;        // Data file name
+  private long timeLimit = 0;     // Wall-clock budget in milliseconds, 0 means none
+  private int stagnationLimit = 0; // Iterations without improvement before stopping, 0 means never
+  private Neighborhood neighborhood = Neighborhood.FLIP; // Moves used by SA and Tabu Search
+  private String algorithm = "sa"; // Solver name for Solver.create()
+  private List<InstanceDelta> deltas = new ArrayList<InstanceDelta>(); // Changes to the instance data
+  private Long seed = null;       // Random seed, null for one from the clock
+  private String checkpointFile = null; // Checkpoint file name, null means no checkpoints
+  private long checkpointInterval = 60000; // Time between checkpoints in milliseconds
+  private boolean resume = false; // Resume from the checkpoint file
+  private double gapTolerance = -1; // Stop within this relative gap of the upper bound, negative means never
+  private int paretoWeights = 0;  // Weights swept in the multi-objective mode, 0 for the single-objective one
+  private int archiveCapacity = 100; // Points kept on the Pareto front
+  private SolverConfig config = new SolverConfig(); // Tuning parameters of the solvers
+  private int workers = 0;        // Worker threads or processes, 0 for the solver's default
+  private String workerHeap = null; // Heap size of worker JVMs, null for the JVM default
+  private boolean compact = false; // Compact swarm storage of DPSO
+  private boolean events = false; // Print improvements while running
+  private ImprovementPublisher publisher = null; // Publisher of the --events printer, null if there is none
+
+  // Parse @args, using @defaultFileName when no data file is given
+  public CommandLine(String args[], String defaultFileName) {
+    fileName = defaultFileName;
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("--time-limit") && i + 1 < args.length)
+        timeLimit = Long.parseLong(args[++i]);
+      else if (args[i].equals("--stagnation") && i + 1 < args.length)
+        stagnationLimit = Integer.parseInt(args[++i]);
+      else if (args[i].equals("--neighborhood") && i + 1 < args.length)
+        neighborhood = Neighborhood.valueOf(args[++i].toUpperCase());
+      else if (args[i].equals("--algorithm") && i + 1 < args.length)
+        algorithm = args[++i];
+      else if (args[i].equals("--delta") && i + 1 < args.length)
+        deltas.add(InstanceDelta.parse(args[++i]));
+      else if (args[i].equals("--seed") && i + 1 < args.length)
+        seed = Long.parseLong(args[++i]);
+      else if (args[i].equals("--checkpoint") && i + 1 < args.length)
+        checkpointFile = args[++i];
+      else if (args[i].equals("--checkpoint-interval") && i + 1 < args.length)
+        checkpointInterval = Long.parseLong(args[++i]);
+      else if (args[i].equals("--resume"))
+        resume = true;
+      else if (args[i].equals("--gap") && i + 1 < args.length)
+        gapTolerance = Double.parseDouble(args[++i]);
+      else if (args[i].equals("--pareto") && i + 1 < args.length)
+        paretoWeights = Integer.parseInt(args[++i]);
+      else if (args[i].equals("--archive-capacity") && i + 1 < args.length)
+        archiveCapacity = Integer.parseInt(args[++i]);
+      else if (args[i].equals("--config") && i + 1 < args.length)
+        config = SolverConfig.parse(args[++i]);
+      else if (args[i].equals("--workers") && i + 1 < args.length)
+        workers = Integer.parseInt(args[++i]);
+      else if (args[i].equals("--worker-heap") && i + 1 < args.length)
+        workerHeap = args[++i];
+      else if (args[i].equals("--compact"))
+        compact = true;
+      else if (args[i].equals("--events"))
+        events = true;
+      else if (args[i].startsWith("--"))
+        throw new IllegalArgumentException("Unknown option " + args[i]);
+      else
+        fileName = args[i];
+    }
+  }
+
+  public String getFileName() {
+    return fileName;
+  }
+
+  // Time limit in milliseconds, 0 if none was given
+  public long getTimeLimit() {
+    return timeLimit;
+  }
+
+  public String getAlgorithm() {
+    return algorithm;
+  }
+
+  public List<InstanceDelta> getDeltas() {
+    return deltas;
+  }
+
+  public Neighborhood getNeighborhood() {
+    return neighborhood;
+  }
+
+  // Weights of the multi-objective mode, 0 if it was not asked for
+  public int getParetoWeights() {
+    return paretoWeights;
+  }
+
+  public int getArchiveCapacity() {
+    return archiveCapacity;
+  }
+
+  public SolverConfig getConfig() {
+    return config;
+  }
+
+  // Worker threads or processes, 0 if not given
+  public int getWorkers() {
+    return workers;
+  }
+
+  public String getWorkerHeap() {
+    return workerHeap;
+  }
+
+  public boolean isCompact() {
+    return compact;
+  }
+
+  // Seed the random number generator of @u if a seed was given
+  public void configure(Utilities u) {
+    if (seed != null)
+      u.setSeed(seed);
+  }
+
+  // Create the run control described by the options, for the instance loaded in @u
+  public RunControl createRunControl(Utilities u) {
+    RunControl control = new RunControl();
+    if (timeLimit > 0)
+      control.setTimeLimit(timeLimit);
+    control.setStagnationLimit(stagnationLimit);
+    if (checkpointFile != null)
+      control.setCheckpoint(checkpointFile, checkpointInterval).setResume(resume);
+    if (gapTolerance >= 0)
+      control.setGapTolerance(gapTolerance, u.getUpperBound());
+    if (events) {
+      publisher = new ImprovementPublisher(u);
+      publisher.subscribe(ImprovementPublisher.printer(System.out));
+      control.setImprovementPublisher(publisher);
+    }
+    return control;
+  }
+
+  // End the --events stream of the run control created last: complete it and wait, at most 5 seconds,
+  // until the printer has printed the last improvement. Call after the run, before reporting results
+  public void closeEvents() {
+    if (publisher == null)
+      return;
+    publisher.close();
+    try {
+      publisher.awaitCompletion(5000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
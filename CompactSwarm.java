@@ -0,0 +1,162 @@
+// Ana Wu, Pace University, April 2016
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * CompactSwarm
+ * Positions, pbests and velocities of a DiscreteParticleSwarm in about 1.25 bytes per cell instead of 12,
+ * for swarms too large to keep in int and float arrays:
+ *   positions and pbests   one bit per cell, cell i * deptNum + j in bit (c & 63) of word c >>> 6
+ *   velocities             a byte per cell, q in -LEVELS..LEVELS standing for q * maxVelocity / LEVELS
+ * Velocities are clamped to +-maxVelocity anyway, so the grid step maxVelocity / LEVELS (0.047 for 6.0) is far
+ * below the size of one update; the new velocity is rounded to the nearest level. The sigmoid of the position
+ * update is read from a table over the levels.
+ */
+public class CompactSwarm {
+  public static final int LEVELS = 127;  // Velocity levels on each side of 0
+
+  private final int materialNum;
+  private final int deptNum;
+  private final int words;               // Longs per bitset
+  private final long[][] positions;
+  private final long[][] pBest;
+  private final byte[][] velocities;
+  private final float maxVelocity;
+  private final float step;              // Velocity of one level
+  private final float[] sigmoid = new float[2 * LEVELS + 1]; // Probability of a 1 for level q at index q + LEVELS
+
+  public CompactSwarm(int particleNumber, int materialNum, int deptNum, float maxVelocity) {
+    this.materialNum = materialNum;
+    this.deptNum = deptNum;
+    this.maxVelocity = maxVelocity;
+    words = (int) (((long) materialNum * deptNum + 63) >>> 6);
+    positions = new long[particleNumber][words];
+    pBest = new long[particleNumber][words];
+    velocities = new byte[particleNumber][materialNum * deptNum];
+    step = maxVelocity / LEVELS;
+    for (int q = -LEVELS; q <= LEVELS; ++q)
+      sigmoid[q + LEVELS] = (float) (1 / (1 + Math.exp(-q * step)));
+  }
+
+  // Bytes used by the swarm state, for comparison with 12 bytes per cell of the arrays
+  public long memoryBytes() {
+    return (long) positions.length * (2L * words * Long.BYTES + velocities[0].length);
+  }
+
+  // Unpack the position of particle @p into x[][]
+  public void getPosition(int p, int x[][]) {
+    unpack(positions[p], x);
+  }
+
+  // Pack x[][] into the position of particle @p
+  public void setPosition(int p, int x[][]) {
+    pack(x, positions[p]);
+  }
+
+  // Unpack the pbest of particle @p into x[][]
+  public void getPBest(int p, int x[][]) {
+    unpack(pBest[p], x);
+  }
+
+  // Pack x[][] into the pbest of particle @p
+  public void setPBest(int p, int x[][]) {
+    pack(x, pBest[p]);
+  }
+
+  // Record the position of particle @p as its pbest
+  public void savePBest(int p) {
+    System.arraycopy(positions[p], 0, pBest[p], 0, words);
+  }
+
+  // The pbest bitset of particle @p, to be passed to updateVelocity() as nbest
+  public long[] pBestBits(int p) {
+    return pBest[p];
+  }
+
+  // Pack x[][] into a new bitset, for an nbest that is not a pbest
+  public long[] bits(int x[][]) {
+    long bits[] = new long[words];
+    pack(x, bits);
+    return bits;
+  }
+
+  // Unpack the velocity of particle @p into v[][], at the values of its levels
+  public void getVelocity(int p, float v[][]) {
+    byte velocity[] = velocities[p];
+    for (int i = 0, c = 0; i < materialNum; ++i) {
+      for (int j = 0; j < deptNum; ++j, ++c)
+        v[i][j] = velocity[c] * step;
+    }
+  }
+
+  // Set the velocity of particle @p to the nearest levels of v[][]
+  public void setVelocity(int p, float v[][]) {
+    byte velocity[] = velocities[p];
+    for (int i = 0, c = 0; i < materialNum; ++i) {
+      for (int j = 0; j < deptNum; ++j, ++c)
+        velocity[c] = quantize(v[i][j]);
+    }
+  }
+
+  // Set the velocity of particle @p at random, uniform in -maxVelocity to maxVelocity before rounding
+  public void randomVelocity(int p, Random random) {
+    byte velocity[] = velocities[p];
+    for (int c = 0; c < velocity.length; ++c)
+      velocity[c] = quantize(random.nextFloat() * (maxVelocity * 2) - maxVelocity);
+  }
+
+  // Update the velocity of particle @p towards its pbest and the bitset @nBest, as DiscreteParticleSwarm does
+  public void updateVelocity(int p, long nBest[], float weight, float c1, float c2, Random random) {
+    byte velocity[] = velocities[p];
+    long position[] = positions[p];
+    long lBest[] = pBest[p];
+    for (int c = 0; c < velocity.length; ++c) {
+      int w = c >>> 6;
+      int x = (int) (position[w] >>> c) & 1;  // Shifts use the low 6 bits of c
+      int l = (int) (lBest[w] >>> c) & 1;
+      int n = (int) (nBest[w] >>> c) & 1;
+      float newV = weight * velocity[c] * step + c1 * random.nextFloat() * (l - x)
+          + c2 * random.nextFloat() * (n - x);          // Equation for update velocity
+      velocity[c] = quantize(newV);
+    }
+  }
+
+  // Update the position of particle @p from its velocity through the sigmoid table
+  // Return the hash of the new position, updated from @hash with @zobrist for every changed cell
+  public long updatePosition(int p, Random random, ZobristTable zobrist, long hash) {
+    byte velocity[] = velocities[p];
+    long position[] = positions[p];
+    for (int i = 0, c = 0; i < materialNum; ++i) {
+      for (int j = 0; j < deptNum; ++j, ++c) {
+        long newValue = (random.nextFloat() < sigmoid[velocity[c] + LEVELS]) ? 1 : 0;
+        int w = c >>> 6;
+        if (((position[w] >>> c) & 1) != newValue) {
+          position[w] ^= 1L << c;
+          hash ^= zobrist.key(i, j);
+        }
+      }
+    }
+    return hash;
+  }
+
+  // Nearest level of velocity @v, clamped to +-maxVelocity
+  private byte quantize(float v) {
+    int q = Math.round(v / step);
+    return (byte) Math.max(-LEVELS, Math.min(LEVELS, q));
+  }
+
+  private void pack(int x[][], long bits[]) {
+    Arrays.fill(bits, 0);
+    for (int i = 0, c = 0; i < materialNum; ++i) {
+      for (int j = 0; j < deptNum; ++j, ++c)
+        bits[c >>> 6] |= (long) x[i][j] << c;
+    }
+  }
+
+  private void unpack(long bits[], int x[][]) {
+    for (int i = 0, c = 0; i < materialNum; ++i) {
+      for (int j = 0; j < deptNum; ++j, ++c)
+        x[i][j] = (int) (bits[c >>> 6] >>> c) & 1;
+    }
+  }
+}
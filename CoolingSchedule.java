@@ -0,0 +1,178 @@
+// Ana Wu, Pace University, April 2016
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/*
+ * Cooling schedule for simulated annealing
+ * 
+ * Fixed schedule: the original one, t = alpha * t after a constant number of moves per level,
+ * frozen when t <= 0.01.
+ * 
+ * Adaptive schedule:
+ * 1.The initial temperature is set from sampled worsening deltas, so that about initialAcceptance
+ *   of the worsening moves would be accepted;
+ * 2.After each level, the acceptance rate of worsening moves is compared with [lowAcceptance, highAcceptance].
+ *   Inside the band the search is productive: cool slower and make more moves per level.
+ *   Outside the band (too hot or nearly frozen): cool faster and make fewer moves per level;
+ * 3.When the best has not improved for reheatLevels levels, reheat to a fraction of the initial temperature,
+ *   at most maxReheats times;
+ * 4.Frozen when the best has not improved for stopLevels levels after the last reheat,
+ *   or when the temperature falls below frozenRatio of the initial temperature.
+ */
+
+public class CoolingSchedule {
+
+  // parameters for adjustment
+  private double initialAcceptance = 0.8; // Share of worsening moves accepted at the initial temperature
+  private int sampleSize = 100;           // Moves sampled for the initial temperature
+  private double lowAcceptance = 0.02;    // Acceptance band of worsening moves
+  private double highAcceptance = 0.5;
+  private double minAlpha = 0.85;         // Range of the cooling rate
+  private double maxAlpha = 0.97;
+  private double reheatRatio = 0.3;       // Reheat to this share of the initial temperature
+  private int reheatLevels = 5;           // Levels without improvement before reheating
+  private int maxReheats = 3;
+  private int stopLevels = 12;            // Levels without improvement before freezing
+  private double frozenRatio = 0.0003;    // Frozen below this share of the initial temperature
+
+  private boolean adaptive;
+  private double scale;                   // Delta multiplier in the acceptance probability exp(delta * scale / t)
+  private double initialTemp;
+  private double t;                       // Current temperature
+  private double alpha;                   // Current cooling rate
+  private int moves;                      // Current moves per level
+  private int minMoves;
+  private int maxMoves;
+  private int worsening;                  // Worsening moves tried in the current level
+  private int worseningAccepted;          // Worsening moves accepted in the current level
+  private int levelsWithoutImprovement;
+  private int reheats;
+  private boolean frozen;
+
+  // Original schedule: start at @initialTemp, multiply by @alpha after @moves moves per level
+  public static CoolingSchedule fixed(double initialTemp, double alpha, int moves) {
+    CoolingSchedule s = new CoolingSchedule();
+    s.adaptive = false;
+    s.initialTemp = initialTemp;
+    s.alpha = alpha;
+    s.moves = s.minMoves = s.maxMoves = moves;
+    return s;
+  }
+
+  // Adaptive schedule making at most @maxMoves moves per level, for the acceptance probability
+  // exp(delta * @scale / t). @fallbackTemp is used if no worsening move is sampled
+  public static CoolingSchedule adaptive(int maxMoves, double scale, double fallbackTemp) {
+    CoolingSchedule s = new CoolingSchedule();
+    s.adaptive = true;
+    s.scale = scale;
+    s.initialTemp = fallbackTemp;
+    s.alpha = 0.9;
+    s.maxMoves = maxMoves;
+    s.minMoves = Math.max(1, maxMoves / 20);
+    s.moves = Math.max(s.minMoves, maxMoves / 4);
+    return s;
+  }
+
+  // Start the schedule for current solution p[][] with objective value @currObjValue
+  // The adaptive schedule samples random feasible neighbors of p[][] to set the initial temperature
+  public void start(int p[][], float currObjValue, Utilities u) {
+    if (adaptive) {
+      int neighbor[][] = new int[p.length][p[0].length];
+      double sum = 0;
+      int count = 0;
+      for (int k = 0; k < sampleSize; ++k) {
+        u.copyArray(p, neighbor);
+        if (u.randomSwap(neighbor) == -1)
+          continue;                         // No feasible neighbor found
+        float delta = u.objectiveValue(neighbor) - currObjValue;
+        if (delta < 0) {
+          sum -= delta;
+          ++count;
+        }
+      }
+      if (count > 0)
+        initialTemp = scale * (sum / count) / -Math.log(initialAcceptance);
+    }
+    t = initialTemp;
+    worsening = worseningAccepted = 0;
+    levelsWithoutImprovement = 0;
+    reheats = 0;
+    frozen = false;
+  }
+
+  // Write the state of a started schedule for a Checkpoint
+  public void writeState(DataOutput out) throws IOException {
+    out.writeDouble(initialTemp);
+    out.writeDouble(t);
+    out.writeDouble(alpha);
+    out.writeInt(moves);
+    out.writeInt(worsening);
+    out.writeInt(worseningAccepted);
+    out.writeInt(levelsWithoutImprovement);
+    out.writeInt(reheats);
+    out.writeBoolean(frozen);
+  }
+
+  // Continue from a state written by writeState(), instead of start()
+  public void readState(DataInput in) throws IOException {
+    initialTemp = in.readDouble();
+    t = in.readDouble();
+    alpha = in.readDouble();
+    moves = in.readInt();
+    worsening = in.readInt();
+    worseningAccepted = in.readInt();
+    levelsWithoutImprovement = in.readInt();
+    reheats = in.readInt();
+    frozen = in.readBoolean();
+  }
+
+  public double getTemperature() {
+    return t;
+  }
+
+  public int getMovesPerLevel() {
+    return moves;
+  }
+
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  // Record a move with objective change @delta, accepted or not
+  public void recordMove(float delta, boolean accepted) {
+    if (delta < 0) {
+      ++worsening;
+      if (accepted)
+        ++worseningAccepted;
+    }
+  }
+
+  // Finish the current level, @bestImproved tells if the best solution improved during it
+  public void endLevel(boolean bestImproved) {
+    if (!adaptive) {
+      t = alpha * t;
+      frozen = t <= 0.01;
+      return;
+    }
+
+    double acceptance = (worsening == 0) ? 0 : (double) worseningAccepted / worsening;
+    if (acceptance >= lowAcceptance && acceptance <= highAcceptance) {
+      alpha = Math.min(maxAlpha, alpha + 0.02);
+      moves = Math.min(maxMoves, moves + moves / 4 + 1);
+    } else {
+      alpha = Math.max(minAlpha, alpha - 0.02);
+      moves = Math.max(minMoves, moves - moves / 4);
+    }
+    worsening = worseningAccepted = 0;
+    t = alpha * t;
+
+    levelsWithoutImprovement = bestImproved ? 0 : levelsWithoutImprovement + 1;
+    if (levelsWithoutImprovement >= reheatLevels && reheats < maxReheats) {
+      t = Math.max(t, reheatRatio * initialTemp);  // Reheat
+      ++reheats;
+      levelsWithoutImprovement = 0;
+    }
+    frozen = levelsWithoutImprovement >= stopLevels || t < frozenRatio * initialTemp;
+  }
+}
@@ -0,0 +1,294 @@
+// Ana Wu, Pace University, April 2016
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Decomposition solver for very large instances
+ * Budgets are per department and bounds are per category, so the instance splits into subproblems
+ * that any solver can handle on its own, each of size (materials of the group) x (departments of the group).
+ *
+ * Process:
+ * 1.Split the instance:
+ *   - by category groups (default): consecutive categories make a group of about groupMaterials materials.
+ *     A group keeps the bounds of its categories and gets a share of every budget in proportion to
+ *     the cost of its materials, so the merged solution meets all constraints if every part does;
+ *   - by department groups (deptGroups > 0): each group keeps the budgets of its departments
+ *     and gets an even share of every category bound;
+ * 2.Solve all subproblems in parallel with subSolver, one thread per processor;
+ * 3.Merge the parts: rows of the category groups, columns of the department groups.
+ *   Repair the merged solution with Utilities.repair();
+ * 4.Polish it for polishTimeLimit milliseconds with SA over compound moves, whose evaluation
+ *   costs O(deptNum) per move instead of O(materialNum * deptNum).
+ */
+
+public class DecompositionSolver implements Solver {
+
+  // parameters for adjustment
+  private String subSolver = "sa";        // Solver for the subproblems, see Solver.create()
+  private int groupMaterials = 2000;      // Materials per category group
+  private int deptGroups = 0;             // Amount of department groups, 0 to split by category
+  private long subTimeLimit = 10000;      // Time limit of each subproblem in milliseconds
+  private long polishTimeLimit = 5000;    // Time limit of the global polish in milliseconds
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  private RunControl control = new RunControl();  // Deadline, cancellation and live incumbent
+  private SolverConfig config = new SolverConfig(); // Tuning parameters of the subproblem solver and the polish
+
+  // Use @control to stop the run early and to publish the best solution while running
+  @Override
+  public void setRunControl(RunControl control) {
+    this.control = control;
+  }
+
+  // Pass @config on to the subproblem solver and the polish
+  @Override
+  public void configure(SolverConfig config) {
+    this.config = config;
+  }
+
+  public void setSubSolver(String name) {
+    subSolver = name;
+  }
+
+  // Split into @groups department groups instead of category groups
+  public void setDeptGroups(int groups) {
+    deptGroups = groups;
+  }
+
+  // Decompose, solve the parts in parallel, merge, repair and polish; return the objective value
+  // Return the solution through bestSolution[][]
+  @Override
+  public float run(int bestSolution[][], Utilities u) {
+    List<Subproblem> parts = (deptGroups > 0) ? splitByDepartments(u) : splitByCategories(u);
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, parts.size())));
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (Subproblem part : parts)
+        futures.add(pool.submit(part::solve));
+      for (Future<?> f : futures)
+        f.get();
+    } catch (InterruptedException e) {
+      control.cancel();
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      control.cancel();
+      throw new RuntimeException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+
+    int x[][] = new int[u.getMaterialNumber()][u.getDeptNumber()];
+    for (Subproblem part : parts)
+      part.mergeInto(x);
+    if (!u.repair(x)) {                       // Lower bounds out of reach from the merged solution
+      x = new int[u.getMaterialNumber()][u.getDeptNumber()];
+      u.randomFeasibleSolution(x);            // Start over from an empty solution
+    }
+    if (!u.isFeasible(x))
+      return Integer.MIN_VALUE;               // Nothing feasible to publish or polish
+    float objValue = u.objectiveValue(x);
+    u.copyArray(x, bestSolution);
+    control.publish(objValue, bestSolution);
+
+    // Global polish, starting from the merged solution
+    RunControl polish = new RunControl(new Incumbent(), control).setTimeLimit(polishTimeLimit);
+    polish.publish(objValue, x);
+    SimulatedAnnealing sa = new SimulatedAnnealing();
+    sa.configure(config);
+    sa.setNeighborhood(Neighborhood.COMPOUND);
+    sa.setRunControl(polish);
+    float polished = sa.run(x, u);
+    if (polished > objValue && u.isFeasible(x)) {
+      objValue = u.objectiveValue(x);
+      u.copyArray(x, bestSolution);
+      control.publish(objValue, bestSolution);
+    }
+    return objValue;
+  }
+
+  // Category groups of about groupMaterials materials, each with all departments
+  private List<Subproblem> splitByCategories(Utilities u) {
+    Instance inst = u.getInstance();
+    int categoryNum = inst.getCategoryNumber();
+    int[] categoryStart = inst.getCategoryStart();
+    int[] categoryMaterials = inst.getCategoryMaterials();
+
+    List<Subproblem> parts = new ArrayList<Subproblem>();
+    List<Integer> categories = new ArrayList<Integer>();
+    int first = 0;                          // First category of the current group
+    for (int k = 0; k < categoryNum; ++k) {
+      categories.add(k);
+      int size = categoryStart[k + 1] - categoryStart[first];
+      if (size >= groupMaterials || k == categoryNum - 1) {  // Consecutive categories are contiguous in the index
+        int[] materials = Arrays.copyOfRange(categoryMaterials, categoryStart[first], categoryStart[k + 1]);
+        parts.add(new Subproblem(materials, null, toArray(categories)));
+        categories.clear();
+        first = k + 1;
+      }
+    }
+    setCategoryGroupData(parts, u);
+    return parts;
+  }
+
+  // deptGroups groups of consecutive departments, each with all materials
+  private List<Subproblem> splitByDepartments(Utilities u) {
+    int deptNum = u.getDeptNumber();
+    int groups = Math.min(deptGroups, deptNum);
+    List<Subproblem> parts = new ArrayList<Subproblem>();
+    for (int g = 0; g < groups; ++g) {
+      List<Integer> depts = new ArrayList<Integer>();
+      for (int j = g * deptNum / groups; j < (g + 1) * deptNum / groups; ++j)
+        depts.add(j);
+      parts.add(new Subproblem(null, toArray(depts), null));
+    }
+    setDeptGroupData(parts, u, groups);
+    return parts;
+  }
+
+  // Category group data: bounds of its own categories, budgets shared in proportion to material cost
+  private void setCategoryGroupData(List<Subproblem> parts, Utilities u) {
+    Instance inst = u.getInstance();
+    int deptNum = inst.getDeptNumber();
+    float[] cost = inst.getCost();
+    double totalCost = 0;
+    for (float c : cost)
+      totalCost += c;
+    int[] budgetLeft = inst.getBudget().clone();
+    for (int g = 0; g < parts.size(); ++g) {
+      Subproblem part = parts.get(g);
+      double groupCost = 0;
+      for (int i : part.materials)
+        groupCost += cost[i];
+      int[] budget = new int[deptNum];
+      for (int j = 0; j < deptNum; ++j) {
+        budget[j] = (g == parts.size() - 1) ? budgetLeft[j]
+                                            : (int) (inst.getBudget()[j] * groupCost / totalCost);
+        budgetLeft[j] -= budget[j];
+      }
+      int[] categoryIndex = new int[inst.getCategoryNumber()];  // Category number within the group
+      int[] lower = new int[part.categories.length];
+      int[] upper = new int[part.categories.length];
+      for (int c = 0; c < part.categories.length; ++c) {
+        categoryIndex[part.categories[c]] = c;
+        lower[c] = inst.getCategoryLower()[part.categories[c]];
+        upper[c] = inst.getCategoryUpper()[part.categories[c]];
+      }
+      int m = part.materials.length;
+      float[][] preference = new float[m][deptNum];
+      int[] belongs = new int[m];
+      float[] partCost = new float[m];
+      for (int a = 0; a < m; ++a) {
+        int i = part.materials[a];
+        System.arraycopy(inst.getPrefRow(), i * deptNum, preference[a], 0, deptNum);
+        belongs[a] = categoryIndex[inst.getBelongs()[i]];
+        partCost[a] = cost[i];
+      }
+      part.setData(u, "categories " + part.categories[0] + "-" + part.categories[part.categories.length - 1],
+                   budget, preference, belongs, partCost, lower, upper);
+    }
+  }
+
+  // Department group data: budgets of its own departments, every category bound shared evenly
+  private void setDeptGroupData(List<Subproblem> parts, Utilities u, int groups) {
+    Instance inst = u.getInstance();
+    int materialNum = inst.getMaterialNumber();
+    int deptNum = inst.getDeptNumber();
+    int categoryNum = inst.getCategoryNumber();
+    for (Subproblem part : parts) {
+      int d = part.depts.length;
+      int[] budget = new int[d];
+      float[][] preference = new float[materialNum][d];
+      for (int b = 0; b < d; ++b) {
+        int j = part.depts[b];
+        budget[b] = inst.getBudget()[j];
+        for (int i = 0; i < materialNum; ++i)
+          preference[i][b] = inst.getPrefRow()[i * deptNum + j];
+      }
+      int[] lower = new int[categoryNum];
+      int[] upper = new int[categoryNum];
+      for (int k = 0; k < categoryNum; ++k) {
+        upper[k] = inst.getCategoryUpper()[k] / groups;
+        lower[k] = Math.min(upper[k], (inst.getCategoryLower()[k] + groups - 1) / groups);
+      }
+      part.setData(u, "departments " + part.depts[0] + "-" + part.depts[d - 1], budget, preference,
+                   inst.getBelongs().clone(), inst.getCost().clone(), lower, upper);
+    }
+  }
+
+  private static int[] toArray(List<Integer> list) {
+    int[] result = new int[list.size()];
+    for (int i = 0; i < result.length; ++i)
+      result[i] = list.get(i);
+    return result;
+  }
+
+  // One part of the instance: a category group (materials, categories) or a department group (depts)
+  private class Subproblem {
+    final int[] materials;      // Materials of a category group, null for a department group
+    final int[] depts;          // Departments of a department group, null for a category group
+    final int[] categories;     // Categories of a category group
+    Utilities u;
+    int[][] solution;
+
+    Subproblem(int[] materials, int[] depts, int[] categories) {
+      this.materials = materials;
+      this.depts = depts;
+      this.categories = categories;
+    }
+
+    void setData(Utilities parent, String name, int[] budget, float[][] preference, int[] belongs, float[] cost,
+                 int[] lower, int[] upper) {
+      u = parent.fork();                          // Own random number generator
+      u.setInstance(name, budget, preference, belongs, cost, lower, upper);
+      u.setFixedPoint(parent.isFixedPoint());
+      solution = new int[belongs.length][budget.length];
+    }
+
+    void solve() {
+      Solver solver = Solver.create(subSolver);
+      solver.configure(config);
+      solver.setRunControl(new RunControl(new Incumbent(), control).setTimeLimit(subTimeLimit));
+      solver.run(solution, u);
+    }
+
+    // Copy the part solution into the rows or columns of x[][]
+    void mergeInto(int x[][]) {
+      if (materials != null) {
+        for (int a = 0; a < materials.length; ++a)
+          System.arraycopy(solution[a], 0, x[materials[a]], 0, solution[a].length);
+      }
+      else {
+        for (int i = 0; i < x.length; ++i) {
+          for (int b = 0; b < depts.length; ++b)
+            x[i][depts[b]] = solution[i][b];
+        }
+      }
+    }
+  }
+
+  public static void main(String args[]) {
+    Utilities u = new Utilities();                    // Create a Utilities object
+    CommandLine cl = new CommandLine(args, "10.txt"); // Default data file name is 10.txt
+    cl.configure(u);                                  // Optional random seed
+    u.readGraph(cl.getFileName());
+
+    int bestSolution[][] = new int[u.getMaterialNumber()][u.getDeptNumber()]; // Allocate space for best solution
+    DecompositionSolver ds = new DecompositionSolver();
+    ds.setRunControl(cl.createRunControl(u));         // Optional time limit
+    ds.configure(cl.getConfig());                     // Optional tuned parameters of the subproblem solver
+    ds.setSubSolver(cl.getAlgorithm());               // Solver for the subproblems, sa by default
+    u.startRun();                                     // Mark the start of run
+    float bestObjValue = ds.run(bestSolution, u);     // Run the decomposition
+    u.endRun();                                       // Mark the end of run
+    cl.closeEvents();                                 // Let --events print the last improvements
+    // Print out results
+    u.reportResult("Decomposition", bestObjValue, bestSolution);
+    // Append results in file costs.txt
+    u.appendBestPartition("Decomposition", bestObjValue, bestSolution);
+  }
+}
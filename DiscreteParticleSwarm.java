@@ -1,5 +1,8 @@
 // Ana Wu, Pace University, April 2016
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Random;
+import java.util.function.ObjIntConsumer;
 
 /*
  * Discrete Particle Swarm Optimization algorithm
@@ -17,20 +20,29 @@ import java.util.Random;
  *     gbest is the best solution found by swarm.
  *   d)If a criterion is met, such as the maximum number of iterations, exit loop;
  * 3.End loop
+ *
+ * Multi-objective mode (setArchive()): particle i weights the average preference value with i / (particleNumber - 1)
+ * in its fitness value, so the swarm spreads over the trade-off curve; every feasible position is offered to the
+ * Pareto archive, and the social term of the velocity follows a random archived solution instead of nbest.
+ *
+ * Compact mode (setCompact()): positions and pbests are bitsets and velocities bytes, see CompactSwarm, for about
+ * a tenth of the memory. Positions are unpacked evaluationBlock at a time for the batch evaluation.
  */
 
 
-public class DiscreteParticleSwarm {
+public class DiscreteParticleSwarm implements Solver {
+  private static final String NAME = "DiscreteParticleSwarm";  // Solver name in checkpoints
 
   // parameters for adjustment
-  private static int particleNumber = 50;         // Particle numbers
-  private static int iterationTimes = 2900;       // Maximum number of iteration time
-  private static float maxVelocity = 6.0f;        // Velocity in each dimension is between -maxVelocity to maxVelocity
-  private static float weight = 1.0f;             // inertia weight of velocity
-  private static float c1 = 2.0f;                 // Cognition learning rate
-  private static float c2 = 2.0f;                 // Social learning rate
-  private static int topologyType = 0;            // Topology type. Well-known topology includes global topology and ring topology.
+  private int particleNumber = 50;                // Particle numbers
+  private int iterationTimes = 2900;              // Maximum number of iteration time
+  private float maxVelocity = 6.0f;               // Velocity in each dimension is between -maxVelocity to maxVelocity
+  private float weight = 1.0f;                    // inertia weight of velocity
+  private float c1 = 2.0f;                        // Cognition learning rate
+  private float c2 = 2.0f;                        // Social learning rate
+  private int topologyType = 0;                   // Topology type. Well-known topology includes global topology and ring topology.
                                                   // 0:Global topology. 1:Ring topology.
+  private int evaluationBlock = 8;                // Positions unpacked per batch evaluation in the compact mode
 
   // variables
   Random random;
@@ -39,17 +51,54 @@ public class DiscreteParticleSwarm {
   int materialNum;
   int deptNum;
   int[][][] positions;
+  long[] positionHashes;          // Zobrist hash of each position, updated cell by cell
+  ZobristTable zobrist;
   int[][][] pBestPosition;
   int[][] bestSolution;
   float[][][] velocities;
   float[] fitness;
+  float[] batchObjective;         // Objective values of all positions from the last batch evaluation
+  float[] batchPenalty;           // Penalty values of all positions from the last batch evaluation
   float bestObjValue;
+  ParetoArchive archive;          // Non-dominated solutions in the multi-objective mode, null otherwise
+  boolean compactMode = false;    // Keep the swarm in a CompactSwarm instead of the arrays
+  CompactSwarm compact;           // Swarm state in the compact mode, null otherwise
+  int[][][] block;                // Unpacked positions in the compact mode
+  RunControl control = new RunControl();  // Deadline, cancellation and live incumbent
 
   // variables
 
+  // Use @control to stop the run early and to publish the best solution while running
+  @Override
+  public void setRunControl(RunControl control) {
+    this.control = control;
+  }
+
+  // Take the swarm parameters from @config
+  @Override
+  public void configure(SolverConfig config) {
+    particleNumber = config.getParticleNumber();
+    weight = config.getWeight();
+    c1 = config.getC1();
+    c2 = config.getC2();
+    maxVelocity = config.getMaxVelocity();
+    topologyType = config.getTopologyType();
+  }
+
+  // Switch to the multi-objective mode, keeping the trade-off curve in @archive
+  public void setArchive(ParetoArchive archive) {
+    this.archive = archive;
+  }
+
+  // Keep positions, pbests and velocities in a CompactSwarm if @compactMode
+  public void setCompact(boolean compactMode) {
+    this.compactMode = compactMode;
+  }
+
   // Use DPSO to find and return the maximum objective value
   // Return the best partition through bestSolution[][]
   // Utilities object u is shared by all algorithms
+  @Override
   public float run(int bestSolution[][], Utilities u) {
     materialNum = u.getMaterialNumber();   // Retrieve amount of materials
     deptNum = u.getDeptNumber();           // Retrieve amount of departments
@@ -57,9 +106,19 @@ public class DiscreteParticleSwarm {
     utilities = u;                         // Retrieve Random object
     this.bestSolution = bestSolution;
 
-    positions = new int[particleNumber][materialNum][deptNum];     // Positions for all particles
-    pBestPosition = new int[particleNumber][materialNum][deptNum]; // Record pbest for all particles
-    velocities = new float[particleNumber][materialNum][deptNum];  // Velocity for all particles
+    if (compactMode) {
+      compact = new CompactSwarm(particleNumber, materialNum, deptNum, maxVelocity); // Bits and bytes for all particles
+      block = new int[Math.min(evaluationBlock, particleNumber)][materialNum][deptNum];
+    }
+    else {
+      positions = new int[particleNumber][materialNum][deptNum];     // Positions for all particles
+      pBestPosition = new int[particleNumber][materialNum][deptNum]; // Record pbest for all particles
+      velocities = new float[particleNumber][materialNum][deptNum];  // Velocity for all particles
+    }
+    positionHashes = new long[particleNumber];                     // Zobrist hash of each position
+    zobrist = u.getZobrist();                                      // Keys for incremental hashing
+    batchObjective = new float[particleNumber];
+    batchPenalty = new float[particleNumber];
     fitness = new float[particleNumber];                           // Fitness value of pbest for all particles
     bestObjValue = Integer.MIN_VALUE;                              // Record best cut size
 
@@ -68,37 +127,154 @@ public class DiscreteParticleSwarm {
     else                                             // Global topology: all particles in one neighborhood.
       topology = new RingTopology(particleNumber);   // Ring topology: particle i in a neighborhood consisting of itself, particle i-1, and particle i+1
 
-    // DPSO step 1: initialization start
-    initializePositions();  // Initialize position randomly for each particle
-    initializeVelocities(); // Initialize velocity randomly for each particle
+    int firstIteration = 0;
+    int iterationsWithoutImprovement = 0;
+    Checkpoint.Input in = Checkpoint.resume(control, NAME, u);
+    if (in != null) {         // Continue from the checkpoint
+      try (Checkpoint.Input checkpoint = in) {
+        readSwarm(checkpoint);
+        firstIteration = checkpoint.readInt();
+        iterationsWithoutImprovement = checkpoint.readInt();
+        u.setRandom(checkpoint.readRandom());
+        random = u.getRandom();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    else {
+      // DPSO step 1: initialization start
+      initializePositions();  // Initialize position randomly for each particle
+      initializeVelocities(); // Initialize velocity randomly for each particle
+      seedFromIncumbent();    // Start one particle from the incumbent if there is one
+    }
 
     // DPSO step 2: start iteration
-    for (int iteration = 0; iteration < iterationTimes; ++iteration) {
+    for (int iteration = firstIteration; iteration < iterationTimes && !control.shouldStop(); ++iteration) {
+      float iterationStartObjValue = bestObjValue;
       evaluateAllFitness();    // Evaluate the fitness value for each particle
       updateAllVelocities();   // Update velocity for each particle
       updateAllPositions();    // Update position for each particle
+      control.countIteration();
+
+      iterationsWithoutImprovement = (bestObjValue > iterationStartObjValue) ? 0 : iterationsWithoutImprovement + 1;
+      if (control.isStagnated(iterationsWithoutImprovement)) {
+        if (!control.isRestartFromIncumbent() || !seedFromIncumbent())
+          break;                              // Nothing better to restart from
+        iterationsWithoutImprovement = 0;
+      }
+      if (control.isCheckpointDue())
+        writeCheckpoint(iteration + 1, iterationsWithoutImprovement);
     }
 
     return bestObjValue;
   }
 
+  // Write the swarm state at the end of an iteration to the checkpoint file,
+  // @nextIteration is the iteration to resume with
+  private void writeCheckpoint(int nextIteration, int iterationsWithoutImprovement) {
+    Checkpoint.Output out = new Checkpoint.Output(NAME, utilities);
+    try {
+      float velocity[][] = (compact != null) ? new float[materialNum][deptNum] : null;
+      for (int i = 0; i < particleNumber; ++i) {
+        if (compact != null) {       // Same format as the arrays, so either mode resumes the other
+          compact.getPosition(i, block[0]);
+          out.writeSolution(block[0]);
+          compact.getVelocity(i, velocity);
+          out.writeMatrix(velocity);
+          compact.getPBest(i, block[0]);
+          out.writeSolution(block[0]);
+          continue;
+        }
+        out.writeSolution(positions[i]);
+        out.writeMatrix(velocities[i]);
+        out.writeSolution(pBestPosition[i]);
+      }
+      out.writeFloats(fitness);
+      out.writeSolution(bestSolution);
+      out.writeFloat(bestObjValue);
+      out.writeInt(nextIteration);
+      out.writeInt(iterationsWithoutImprovement);
+      out.writeRandom(random);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    out.commit(control.getCheckpointFile());
+  }
+
+  // Restore the swarm state written by writeCheckpoint(), up to the iteration numbers
+  private void readSwarm(Checkpoint.Input in) throws IOException {
+    float velocity[][] = (compact != null) ? new float[materialNum][deptNum] : null;
+    for (int i = 0; i < particleNumber; ++i) {
+      if (compact != null) {
+        in.readSolution(block[0]);
+        compact.setPosition(i, block[0]);
+        positionHashes[i] = zobrist.hash(block[0]);
+        in.readMatrix(velocity);
+        compact.setVelocity(i, velocity);
+        in.readSolution(block[0]);
+        compact.setPBest(i, block[0]);
+        continue;
+      }
+      in.readSolution(positions[i]);
+      in.readMatrix(velocities[i]);
+      in.readSolution(pBestPosition[i]);
+      positionHashes[i] = zobrist.hash(positions[i]);
+    }
+    in.readFloats(fitness);
+    in.readSolution(bestSolution);
+    bestObjValue = in.readFloat();
+  }
+
   // Initialize position for each particle randomly
   private void initializePositions() {
     for (int i = 0; i < particleNumber; ++i) {
-      utilities.randomFeasibleSolution(positions[i]);           // Generate random initial solution
-      utilities.copyArray(positions[i], pBestPosition[i]);      // Record pbest solution
-      float currentCost = utilities.fitnessValue(positions[i]); // Find out its cost
+      int[][] position = (compact != null) ? block[0] : positions[i];
+      boolean feasible = utilities.randomFeasibleSolution(position); // Generate random initial solution
+      if (compact != null)
+        compact.setPosition(i, position);
+      savePBest(i, position);                                   // Record pbest solution
+      positionHashes[i] = zobrist.hash(position);
+      float currentCost = utilities.cachedFitnessValue(position, positionHashes[i]); // Find out its cost
       fitness[i] = currentCost;                                 // For feasible solution, fitness value is same as its cost
-      if (isPositionFeasible(positions[i]) && isBetter(currentCost, bestObjValue)) {// Record it if find a better solution
+      if (archive != null)                                      // Same weighted value as later pbest comparisons
+        fitness[i] = archiveFitness(i, position, utilities.cachedPenaltyValue(position, positionHashes[i]));
+      if (feasible && isPositionFeasible(position, positionHashes[i]) && isBetter(currentCost, bestObjValue)) {// Record it if find a better solution
         bestObjValue = currentCost;
-        utilities.copyArray(positions[i], bestSolution);
+        utilities.copyArray(position, bestSolution);
+        control.publish(bestObjValue, bestSolution);
       }
     }
   }
 
+  // Copy the incumbent into the particle with the worst pbest if it beats gbest
+  // Return true if the swarm was seeded
+  private boolean seedFromIncumbent() {
+    int worst = 0;
+    for (int i = 1; i < particleNumber; ++i) {
+      if (isBetter(fitness[worst], fitness[i]))
+        worst = i;
+    }
+    int[][] position = (compact != null) ? block[0] : positions[worst];
+    float seeded = control.pullIncumbent(position, bestObjValue);
+    if (seeded == -Float.MAX_VALUE)
+      return false;
+    if (compact != null)
+      compact.setPosition(worst, position);
+    savePBest(worst, position);
+    positionHashes[worst] = zobrist.hash(position);
+    fitness[worst] = (archive != null) ? archiveFitness(worst, position, 0) : seeded;
+    bestObjValue = seeded;
+    utilities.copyArray(position, bestSolution);
+    return true;
+  }
+
   // Initialize velocity for each particle randomly
   private void initializeVelocities() {
     for (int p = 0; p < particleNumber; ++p) {
+      if (compact != null) {
+        compact.randomVelocity(p, random);
+        continue;
+      }
       for (int i = 0; i < materialNum; ++i) {  // Generate random velocity in each dimension
         for (int j = 0; j < deptNum; ++j)
           // Velocity in each dimension is between -maxVelocity to maxVelocity
@@ -109,21 +285,78 @@ public class DiscreteParticleSwarm {
 
   // Evaluate fitness value for each particle
   private void evaluateAllFitness() {
-    for (int i = 0; i < particleNumber; ++i) {
-      float currFitness = utilities.fitnessValue(positions[i]); // Calculate fitness value for current solution
+    evaluatePositions((position, i) -> {
+      float currFitness = batchObjective[i] - batchPenalty[i]; // Fitness value for current solution
+      if (archive != null)
+        currFitness = archiveFitness(i, position, batchPenalty[i]);
       if (isBetter(currFitness, fitness[i])) {                  // Record it if get a better solution
         fitness[i] = currFitness;
-        utilities.copyArray(positions[i], pBestPosition[i]);
+        savePBest(i, position);
+        if (batchPenalty[i] == 0.0f)                            // A feasible pbest, for the elite pool
+          control.offerElite(batchObjective[i], position);
       }
+    });
+  }
+
+  // Batch evaluate all positions into batchObjective[] and batchPenalty[], then pass each position with its index
+  // to @visitor; the compact mode unpacks and evaluates evaluationBlock positions at a time
+  private void evaluatePositions(ObjIntConsumer<int[][]> visitor) {
+    if (compact == null) {
+      utilities.cachedBatchEvaluate(positions, positionHashes, particleNumber, batchObjective, batchPenalty); // All particles in one pass
+      for (int i = 0; i < particleNumber; ++i)
+        visitor.accept(positions[i], i);
+      return;
     }
+    long hashes[] = new long[block.length];
+    float objective[] = new float[block.length];
+    float penalty[] = new float[block.length];
+    for (int first = 0; first < particleNumber; first += block.length) {
+      int count = Math.min(block.length, particleNumber - first);
+      for (int k = 0; k < count; ++k) {
+        compact.getPosition(first + k, block[k]);
+        hashes[k] = positionHashes[first + k];
+      }
+      utilities.cachedBatchEvaluate(block, hashes, count, objective, penalty);
+      System.arraycopy(objective, 0, batchObjective, first, count);
+      System.arraycopy(penalty, 0, batchPenalty, first, count);
+      for (int k = 0; k < count; ++k)
+        visitor.accept(block[k], first + k);
+    }
+  }
+
+  // Record @position as the pbest of particle i
+  private void savePBest(int i, int[][] position) {
+    if (compact != null)
+      compact.savePBest(i);
+    else
+      utilities.copyArray(position, pBestPosition[i]);
+  }
+
+  // Fitness value of particle i in the multi-objective mode, with its own weight of the average preference value,
+  // for @position with penalty value @penalty; a feasible position is offered to the archive
+  private float archiveFitness(int i, int[][] position, float penalty) {
+    float preference = utilities.getAvePreference(position);
+    float rate = utilities.getBudgetExecRate(position);
+    if (penalty == 0.0f)
+      archive.offer(preference, rate, position);
+    float weight = (particleNumber == 1) ? utilities.getPreferenceWeight() : (float) i / (particleNumber - 1);
+    return weight * preference + (1 - weight) * rate - penalty;
   }
 
   // Update velocity for each particle every iteration
   private void updateAllVelocities() {
     for (int i = 0; i < particleNumber; ++i) {
-      int bestNeibor = findBestNeighborIndex(i);             // Find best neighbor for particle i
+      // In the multi-objective mode nbest is a leader from the archive; fitness values of particles with
+      // other weights do not compare, so the best neighbor is only looked for while the archive is empty
+      ParetoArchive.Point leader = (archive != null) ? archive.select(random) : null;
+      int bestNeibor = (leader == null) ? findBestNeighborIndex(i) : -1; // Find best neighbor for particle i
+      if (compact != null) {                                 // nbest straight from the bitsets
+        long[] bestNBits = (leader != null) ? compact.bits(leader.solution) : compact.pBestBits(bestNeibor);
+        compact.updateVelocity(i, bestNBits, weight, c1, c2, random);
+        continue;
+      }
       int[][] bestNPosition = new int[materialNum][deptNum]; // Record nbest, the position of the best neighbor
-      utilities.copyArray(pBestPosition[bestNeibor], bestNPosition);
+      utilities.copyArray((leader != null) ? leader.solution : pBestPosition[bestNeibor], bestNPosition);
       calculateNewVelocity(velocities[i], positions[i], pBestPosition[i], bestNPosition); // Calculate new velocity
     }
   }
@@ -131,15 +364,21 @@ public class DiscreteParticleSwarm {
   // Update position for each particle every iteration
   private void updateAllPositions() {
     for (int i = 0; i < particleNumber; ++i) {
-      calculateNewPosition(positions[i], velocities[i]); // Update position
-      if (isPositionFeasible(positions[i])) {            // Update bestPosition if get a better feasible solution
-        float currObjValue = utilities.objectiveValue(positions[i]);
+      if (compact != null)                               // Sigmoid from the table of velocity levels
+        positionHashes[i] = compact.updatePosition(i, random, zobrist, positionHashes[i]);
+      else
+        positionHashes[i] = calculateNewPosition(positions[i], velocities[i], positionHashes[i]); // Update position
+    }
+    evaluatePositions((position, i) -> {
+      if (batchPenalty[i] == 0.0f) {                     // Update bestPosition if get a better feasible solution
+        float currObjValue = batchObjective[i];
         if (isBetter(currObjValue, bestObjValue)) {
           bestObjValue = currObjValue;
-          utilities.copyArray(positions[i], bestSolution);
+          utilities.copyArray(position, bestSolution);
+          control.publish(bestObjValue, bestSolution);
         }
       }
-    }
+    });
   }
 
   // Find best neighbor for specific particle and return the index
@@ -168,22 +407,24 @@ public class DiscreteParticleSwarm {
   }
 
   // Calculate new position by dimension
-  private void calculateNewPosition(int[][] position, float[][] velocity) {
+  // Return the hash of the new position, updated from @hash for every changed cell
+  private long calculateNewPosition(int[][] position, float[][] velocity, long hash) {
     for (int i = 0; i < position.length; ++i) {
       for (int j = 0; j < position[0].length; ++j) {
         float sigmodial = (float) (1 / (1 + Math.exp(-velocity[i][j]))); // Equation for update position
-        if (random.nextFloat() < sigmodial) {
-          position[i][j] = 1;
-        } else {
-          position[i][j] = 0;
+        int newValue = (random.nextFloat() < sigmodial) ? 1 : 0;
+        if (position[i][j] != newValue) {
+          position[i][j] = newValue;
+          hash ^= zobrist.key(i, j);
         }
       }
     }
+    return hash;
   }
 
-  // Check is position feasible or not
-  private boolean isPositionFeasible(int[][] p) {
-    return utilities.penaltyValue(p) == 0.0f;
+  // Check is position feasible or not, @hash is the Zobrist hash of p[][]
+  private boolean isPositionFeasible(int[][] p, long hash) {
+    return utilities.cachedIsFeasible(p, hash);
   }
 
   // check is @newValue better than @oldValue (maximize objective value)
@@ -197,17 +438,24 @@ public class DiscreteParticleSwarm {
   public static void main(String[] args) {
     // TODO Auto-generated method stub
     Utilities u = new Utilities(); // Create a Utilities object
-    String fileName = "10.txt";    // Default data file name
-    if (args.length == 1)
-      fileName = args[0];          // Use command-line file name
-    u.readGraph(fileName);
+    CommandLine cl = new CommandLine(args, "10.txt"); // Default data file name is 10.txt
+    cl.configure(u);               // Optional random seed
+    u.readGraph(cl.getFileName());
 
     int bestSolution[][] = new int[u.getMaterialNumber()][u.getDeptNumber()]; // Allocate space for best solution
     DiscreteParticleSwarm pso = new DiscreteParticleSwarm();
+    pso.setCompact(cl.isCompact());            // Optional compact swarm storage
+    pso.setRunControl(cl.createRunControl(u)); // Optional time limit and stagnation stop
+    pso.configure(cl.getConfig());             // Optional tuned parameters
+    if (cl.getParetoWeights() > 0)             // Multi-objective mode, the particles spread the weights
+      pso.setArchive(new ParetoArchive(cl.getArchiveCapacity()));
     u.startRun();                                  // Mark the start of run
     float bestObjValue = pso.run(bestSolution, u); // Run Particle Swarm Optimization
     u.endRun();                                    // Mark the end of run
+    cl.closeEvents();                              // Let --events print the last improvements
     // Print out results
+    if (pso.archive != null)
+      pso.archive.printFront();
     u.reportResult("Particle Swarm Optimization", bestObjValue, bestSolution);
     // Append results in file costs.txt
     u.appendBestPartition("Particle Swarm Optimization", bestObjValue, bestSolution);
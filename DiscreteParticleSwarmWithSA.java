@@ -1,5 +1,16 @@
 // Ana Wu, Pace University, April 2016
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /*
  * Discrete Particle Swarm Optimization with Simulated Annealing algorithm
@@ -11,6 +22,9 @@ import java.util.Random;
  *     If converged currently:
  *       Launch Simulated Annealing to try to find a better neighborhood solution, 
  *       then dispatch all particles by reset velocities and positions; 
+ *       With background refinement, SA (or a short tabu walk) runs on the best solution and
+ *       the best feasible pbests on a background executor while the swarm keeps iterating.
+ *       Refined solutions are merged back into gbest and seed particles when they finish;
  *     Else
  *       go to step b;
  *   b)For each particle, evaluate the fitness value, then compare the fitness value with its pbest.
@@ -25,20 +39,27 @@ import java.util.Random;
  * 3.End loop
  */
 
-public class DiscreteParticleSwarmWithSA {
+public class DiscreteParticleSwarmWithSA implements Solver {
+  private static final String NAME = "DiscreteParticleSwarmWithSA";  // Solver name in checkpoints
 
   // parameters for adjustment
-  private static int particleNumber = 50;    // Particle numbers
-  private static int iterationTimes = 1850;  // Maximum number of iteration time
-  private static float maxVelocity = 6.0f;   // Velocity in each dimension is
+  private int particleNumber = 50;           // Particle numbers
+  private int iterationTimes = 1850;         // Maximum number of iteration time
+  private float maxVelocity = 6.0f;          // Velocity in each dimension is
                                              // between -maxVelocity to
                                              // maxVelocity
-  private static float weight = 1.0f;        // inertia weight of velocity
-  private static float c1 = 2.0f;            // Cognition learning rate
-  private static float c2 = 2.0f;            // Social learning rate
-  private static int topologyType = 0;       // Topology type. Well-known topology
+  private float weight = 1.0f;               // inertia weight of velocity
+  private float c1 = 2.0f;                   // Cognition learning rate
+  private float c2 = 2.0f;                   // Social learning rate
+  private int topologyType = 0;              // Topology type. Well-known topology
                                              // includes global topology and ring topology.
                                              // 0:Global topology. 1:Ring topology.
+  private boolean backgroundRefinement = true; // Refine in the background, or stop the swarm for SA
+  private int refinementType = 0;            // 0:Simulated annealing. 1:Short tabu walk.
+  private int eliteNumber = 3;               // Solutions refined at each convergence
+  private SolverConfig config = new SolverConfig(); // Parameters of the SA refinement
+  private int tabuWalkLength = 50;           // Moves without improvement that end a tabu walk
+  private int refinementThreads = Runtime.getRuntime().availableProcessors(); // Background executor size
 
   // variables
   Random random;
@@ -47,16 +68,43 @@ public class DiscreteParticleSwarmWithSA {
   int materialNum;
   int deptNum;
   int[][][] positions;
+  long[] positionHashes;          // Zobrist hash of each position, updated cell by cell
+  ZobristTable zobrist;
   int[][][] pBestPosition;
   int[][] bestSolution;
   float[][][] velocities;
   float[] fitness;
+  float[] batchObjective;         // Objective values of all positions from the last batch evaluation
+  float[] batchPenalty;           // Penalty values of all positions from the last batch evaluation
   float bestObjValue;
+  RunControl control = new RunControl();  // Deadline, cancellation and live incumbent
+  ExecutorService refiner;                // Background executor for refinements
+  RunControl refineControl;               // Stops the refinements with the swarm
+  List<Refinement> pending;               // Refinements submitted and not merged yet
   // variables
 
+  // Use @control to stop the run early and to publish the best solution while running
+  @Override
+  public void setRunControl(RunControl control) {
+    this.control = control;
+  }
+
+  // Take the swarm and refinement parameters from @config
+  @Override
+  public void configure(SolverConfig config) {
+    particleNumber = config.getParticleNumber();
+    weight = config.getWeight();
+    c1 = config.getC1();
+    c2 = config.getC2();
+    maxVelocity = config.getMaxVelocity();
+    topologyType = config.getTopologyType();
+    this.config = config;                    // SA refinement parameters
+  }
+
   // Use DPSO and SA to find and return the maximum objective value
   // Return the best partition through bestSolution[][]
   // Utilities object u is shared by all algorithms
+  @Override
   public float run(int bestSolution[][], Utilities u) {
     materialNum = u.getMaterialNumber();                         // Retrieve amount of materials
     deptNum = u.getDeptNumber();                                 // Retrieve amount of departments 
@@ -67,6 +115,10 @@ public class DiscreteParticleSwarmWithSA {
     positions = new int[particleNumber][materialNum][deptNum];    // Positions for all particles
     pBestPosition = new int[particleNumber][materialNum][deptNum];// Record pbest for all particles
     velocities = new float[particleNumber][materialNum][deptNum]; // Velocity for all particles
+    positionHashes = new long[particleNumber];                     // Zobrist hash of each position
+    zobrist = u.getZobrist();                                      // Keys for incremental hashing
+    batchObjective = new float[particleNumber];
+    batchPenalty = new float[particleNumber];
     fitness = new float[particleNumber];                          // Fitness value of pbest for all particles
     bestObjValue = Integer.MIN_VALUE;                             // Record best cut size
 
@@ -75,41 +127,239 @@ public class DiscreteParticleSwarmWithSA {
     else                                            // Global topology: all particles in one neighborhood.
       topology = new RingTopology(particleNumber);  // Ring topology: particle i in a neighborhood consisting of itself, particle i-1, and particle i+1
 
-    // DPSO step 1: initialization start
-    initializePositions();  // Initialize position randomly for each particle
-    initializeVelocities(); // Initialize velocity randomly for each particle
+    int firstIteration = 0;
+    int iterationsWithoutImprovement = 0;
+    Checkpoint.Input in = Checkpoint.resume(control, NAME, u);
+    if (in != null) {         // Continue from the checkpoint
+      try (Checkpoint.Input checkpoint = in) {
+        readSwarm(checkpoint);
+        firstIteration = checkpoint.readInt();
+        iterationsWithoutImprovement = checkpoint.readInt();
+        u.setRandom(checkpoint.readRandom());
+        random = u.getRandom();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    else {
+      // DPSO step 1: initialization start
+      initializePositions();  // Initialize position randomly for each particle
+      initializeVelocities(); // Initialize velocity randomly for each particle
+      seedFromIncumbent();    // Start one particle from the incumbent if there is one
+    }
+
+    if (backgroundRefinement) {
+      refiner = Executors.newFixedThreadPool(Math.max(1, refinementThreads));
+      refineControl = new RunControl(new Incumbent(), control);
+      pending = new ArrayList<Refinement>();
+    }
 
     // DPSO step 2: start iteration
-    for (int iteration = 0; iteration < iterationTimes; ++iteration) {
+    try {
+      iterate(firstIteration, iterationsWithoutImprovement);
+    } finally {
+      if (backgroundRefinement)
+        stopRefinements();
+    }
+    return bestObjValue;
+  }
+
+  private void iterate(int firstIteration, int iterationsWithoutImprovement) {
+    for (int iteration = firstIteration; iteration < iterationTimes && !control.shouldStop(); ++iteration) {
+      float iterationStartObjValue = bestObjValue;
+      if (backgroundRefinement)
+        mergeRefinements(false);  // Take in the refined solutions that are ready
       
       // Check if converged currently
       if (checkIsConverged()) {
         System.out.println("convergence!");
-        sa();           // Launch SA to try to find a better neighbor solution
+        if (backgroundRefinement)
+          submitRefinements();    // Refine elite solutions while the swarm goes on
+        else
+          sa();                   // Launch SA to try to find a better neighbor solution
         reInitialize(); // Dispatch all particles by reset velocities and positions
       }
 
       evaluateAllFitness();  // Evaluate the fitness value for each particle
       updateAllVelocities(); // Update velocity for each particle
       updateAllPositions();  // Update position for each particle
+      control.countIteration();
+
+      iterationsWithoutImprovement = (bestObjValue > iterationStartObjValue) ? 0 : iterationsWithoutImprovement + 1;
+      if (control.isStagnated(iterationsWithoutImprovement)) {
+        if (!control.isRestartFromIncumbent() || !seedFromIncumbent())
+          break;                              // Nothing better to restart from
+        iterationsWithoutImprovement = 0;
+      }
+      // Refinements still running are not part of the state: checkpoint between them
+      if ((!backgroundRefinement || pending.isEmpty()) && control.isCheckpointDue())
+        writeCheckpoint(iteration + 1, iterationsWithoutImprovement);
     }
+  }
 
-    return bestObjValue;
+  // Write the swarm state at the end of an iteration to the checkpoint file,
+  // @nextIteration is the iteration to resume with
+  private void writeCheckpoint(int nextIteration, int iterationsWithoutImprovement) {
+    Checkpoint.Output out = new Checkpoint.Output(NAME, utilities);
+    try {
+      for (int i = 0; i < particleNumber; ++i) {
+        out.writeSolution(positions[i]);
+        out.writeMatrix(velocities[i]);
+        out.writeSolution(pBestPosition[i]);
+      }
+      out.writeFloats(fitness);
+      out.writeSolution(bestSolution);
+      out.writeFloat(bestObjValue);
+      out.writeInt(nextIteration);
+      out.writeInt(iterationsWithoutImprovement);
+      out.writeRandom(random);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    out.commit(control.getCheckpointFile());
+  }
+
+  // Restore the swarm state written by writeCheckpoint(), up to the iteration numbers
+  private void readSwarm(Checkpoint.Input in) throws IOException {
+    for (int i = 0; i < particleNumber; ++i) {
+      in.readSolution(positions[i]);
+      in.readMatrix(velocities[i]);
+      in.readSolution(pBestPosition[i]);
+      positionHashes[i] = zobrist.hash(positions[i]);
+    }
+    in.readFloats(fitness);
+    in.readSolution(bestSolution);
+    bestObjValue = in.readFloat();
   }
 
   // Launch Simulated Annealing algorithm
   private void sa() {
     SAForDPSO sa = new SAForDPSO();
+    sa.configure(config);
+    sa.setRunControl(control);
     sa.run(bestSolution, utilities);
   }
 
+  // Submit refinements of the best solution and of the best feasible pbests,
+  // unless the ones submitted at the previous convergence are still running
+  private void submitRefinements() {
+    if (!pending.isEmpty())
+      return;
+    List<int[][]> starts = new ArrayList<int[][]>();
+    List<Long> hashes = new ArrayList<Long>();
+    if (utilities.isFeasible(bestSolution)) {
+      starts.add(copyOf(bestSolution));
+      hashes.add(zobrist.hash(bestSolution));
+    }
+    Integer[] order = new Integer[particleNumber];
+    for (int i = 0; i < particleNumber; ++i)
+      order[i] = i;
+    Arrays.sort(order, (a, b) -> Float.compare(fitness[b], fitness[a]));
+    for (int k = 0; k < particleNumber && starts.size() < eliteNumber; ++k) {
+      int[][] elite = pBestPosition[order[k]];
+      long hash = zobrist.hash(elite);
+      if (!hashes.contains(hash) && utilities.isFeasible(elite)) {
+        starts.add(copyOf(elite));
+        hashes.add(hash);
+      }
+    }
+    for (int[][] start : starts) {
+      Refinement job = new Refinement(start, utilities.fork()); // Own random number generator per job
+      job.result = refiner.submit(job);
+      pending.add(job);
+    }
+  }
+
+  // Merge the finished refinements into gbest and seed a particle with each one
+  // If @wait, wait for all pending refinements
+  private void mergeRefinements(boolean wait) {
+    for (Iterator<Refinement> it = pending.iterator(); it.hasNext(); ) {
+      Refinement job = it.next();
+      if (!wait && !job.result.isDone())
+        continue;
+      it.remove();
+      float objValue;
+      try {
+        objValue = job.result.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+      if (isBetter(objValue, bestObjValue)) {
+        bestObjValue = objValue;
+        utilities.copyArray(job.solution, bestSolution);
+        control.publish(bestObjValue, bestSolution);
+      }
+      int worst = 0;                          // The refined solution replaces the worst particle
+      for (int i = 1; i < particleNumber; ++i) {
+        if (isBetter(fitness[worst], fitness[i]))
+          worst = i;
+      }
+      if (isBetter(objValue, fitness[worst])) {
+        utilities.copyArray(job.solution, positions[worst]);
+        utilities.copyArray(job.solution, pBestPosition[worst]);
+        positionHashes[worst] = zobrist.hash(positions[worst]);
+        fitness[worst] = objValue;
+      }
+    }
+  }
+
+  // Stop the refinements still running, merge what they found and shut the executor down
+  private void stopRefinements() {
+    refineControl.cancel();
+    try {
+      mergeRefinements(true);
+    } finally {
+      refiner.shutdown();                     // Even if a refinement failed, or its threads keep the JVM alive
+    }
+  }
+
+  private int[][] copyOf(int x[][]) {
+    int[][] copy = new int[materialNum][deptNum];
+    utilities.copyArray(x, copy);
+    return copy;
+  }
+
+  // Refinement job: SA or a short tabu walk from a feasible solution, improved in place
+  private class Refinement implements Callable<Float> {
+    final int[][] solution;
+    final Utilities u;
+    Future<Float> result;
+
+    Refinement(int[][] solution, Utilities u) {
+      this.solution = solution;
+      this.u = u;
+    }
+
+    @Override
+    public Float call() {
+      if (0 == refinementType) {
+        SAForDPSO sa = new SAForDPSO();
+        sa.configure(config);
+        sa.setRunControl(refineControl);
+        return sa.run(solution, u);
+      }
+      RunControl walk = new RunControl(new Incumbent(), refineControl);
+      walk.setStagnationLimit(tabuWalkLength);
+      walk.publish(u.objectiveValue(solution), solution);    // Tabu search starts from the incumbent
+      TabuSearch tabu = new TabuSearch();
+      tabu.setNeighborhood(Neighborhood.COMPOUND);
+      tabu.setRunControl(walk);
+      return tabu.run(solution, u);
+    }
+  }
+
   // Dispatch all particles by reset velocities and positions
   private void reInitialize() {
     resetPosition();
     initializeVelocities();
     initializePositions();
     utilities.copyArray(bestSolution, positions[0]);
+    positionHashes[0] = zobrist.hash(positions[0]);
     bestObjValue = utilities.fitnessValue(bestSolution);
+    control.publish(bestObjValue, bestSolution);
   }
 
   private void resetPosition() {
@@ -142,17 +392,38 @@ public class DiscreteParticleSwarmWithSA {
   // Initialize position for each particle randomly
   private void initializePositions() {
     for (int i = 0; i < particleNumber; ++i) {
-      utilities.randomFeasibleSolution(positions[i]);           // Generate random initial solution
+      boolean feasible = utilities.randomFeasibleSolution(positions[i]); // Generate random initial solution
       utilities.copyArray(positions[i], pBestPosition[i]);      // Record pbest solution
-      float currentCost = utilities.fitnessValue(positions[i]); // Find out its cost
+      positionHashes[i] = zobrist.hash(positions[i]);
+      float currentCost = utilities.cachedFitnessValue(positions[i], positionHashes[i]); // Find out its cost
       fitness[i] = currentCost;                                 // For feasible solution, fitness value is same as its cost
-      if (isPositionFeasible(positions[i]) && isBetter(currentCost, bestObjValue)) { // Record it if find a better solution
+      if (feasible && isPositionFeasible(positions[i], positionHashes[i]) && isBetter(currentCost, bestObjValue)) { // Record it if find a better solution
         bestObjValue = currentCost;
         utilities.copyArray(positions[i], bestSolution);
+        control.publish(bestObjValue, bestSolution);
       }
     }
   }
 
+  // Copy the incumbent into the particle with the worst pbest if it beats gbest
+  // Return true if the swarm was seeded
+  private boolean seedFromIncumbent() {
+    int worst = 0;
+    for (int i = 1; i < particleNumber; ++i) {
+      if (isBetter(fitness[worst], fitness[i]))
+        worst = i;
+    }
+    float seeded = control.pullIncumbent(positions[worst], bestObjValue);
+    if (seeded == -Float.MAX_VALUE)
+      return false;
+    utilities.copyArray(positions[worst], pBestPosition[worst]);
+    positionHashes[worst] = zobrist.hash(positions[worst]);
+    fitness[worst] = seeded;
+    bestObjValue = seeded;
+    utilities.copyArray(positions[worst], bestSolution);
+    return true;
+  }
+
   // Initialize velocity for each particle randomly
   private void initializeVelocities() {
     for (int p = 0; p < particleNumber; ++p) {
@@ -166,8 +437,9 @@ public class DiscreteParticleSwarmWithSA {
 
   // Evaluate fitness value for each particle
   private void evaluateAllFitness() {
+    utilities.cachedBatchEvaluate(positions, positionHashes, particleNumber, batchObjective, batchPenalty); // All particles in one pass
     for (int i = 0; i < particleNumber; ++i) {
-      float currFitness = utilities.fitnessValue(positions[i]); // Calculate fitness value for current solution
+      float currFitness = batchObjective[i] - batchPenalty[i]; // Fitness value for current solution
       if (isBetter(currFitness, fitness[i])) {                   // Record it if get a better solution
         fitness[i] = currFitness;
         utilities.copyArray(positions[i], pBestPosition[i]);
@@ -187,13 +459,16 @@ public class DiscreteParticleSwarmWithSA {
 
   // Update position for each particle every iteration
   private void updateAllPositions() {
+    for (int i = 0; i < particleNumber; ++i)
+      positionHashes[i] = calculateNewPosition(positions[i], velocities[i], positionHashes[i]); // Update position
+    utilities.cachedBatchEvaluate(positions, positionHashes, particleNumber, batchObjective, batchPenalty); // All particles in one pass
     for (int i = 0; i < particleNumber; ++i) {
-      calculateNewPosition(positions[i], velocities[i]); // Update position
-      if (isPositionFeasible(positions[i])) {            // Update bestPosition if get a better feasible solution
-        float currObjValue = utilities.objectiveValue(positions[i]);
+      if (batchPenalty[i] == 0.0f) {                     // Update bestPosition if get a better feasible solution
+        float currObjValue = batchObjective[i];
         if (isBetter(currObjValue, bestObjValue)) {
           bestObjValue = currObjValue;
           utilities.copyArray(positions[i], bestSolution);
+          control.publish(bestObjValue, bestSolution);
         }
       }
     }
@@ -225,22 +500,24 @@ public class DiscreteParticleSwarmWithSA {
   }
 
   // Calculate new position by dimension
-  private void calculateNewPosition(int[][] position, float[][] velocity) {
+  // Return the hash of the new position, updated from @hash for every changed cell
+  private long calculateNewPosition(int[][] position, float[][] velocity, long hash) {
     for (int i = 0; i < position.length; ++i) {
       for (int j = 0; j < position[0].length; ++j) {
         float sigmodial = (float) (1 / (1 + Math.exp(-velocity[i][j]))); // Equation for update position
-        if (random.nextFloat() < sigmodial) {
-          position[i][j] = 1;
-        } else {
-          position[i][j] = 0;
+        int newValue = (random.nextFloat() < sigmodial) ? 1 : 0;
+        if (position[i][j] != newValue) {
+          position[i][j] = newValue;
+          hash ^= zobrist.key(i, j);
         }
       }
     }
+    return hash;
   }
 
-  // Check is position feasible or not
-  private boolean isPositionFeasible(int[][] p) {
-    return utilities.penaltyValue(p) == 0.0f;
+  // Check is position feasible or not, @hash is the Zobrist hash of p[][]
+  private boolean isPositionFeasible(int[][] p, long hash) {
+    return utilities.cachedIsFeasible(p, hash);
   }
 
   // check is @newValue better than @oldValue (maximize objective value)
@@ -253,17 +530,19 @@ public class DiscreteParticleSwarmWithSA {
 
   public static void main(String[] args) {
     // TODO Auto-generated method stub
-    Utilities u = new Utilities();    // Create a Utilities object
-    String fileName = "10.txt";       // Default data file name
-    if (args.length == 1)
-      fileName = args[0];             // Use command-line file name
-    u.readGraph(fileName);
+    Utilities u = new Utilities(); // Create a Utilities object
+    CommandLine cl = new CommandLine(args, "10.txt"); // Default data file name is 10.txt
+    cl.configure(u);               // Optional random seed
+    u.readGraph(cl.getFileName());
 
     int bestSolution[][] = new int[u.getMaterialNumber()][u.getDeptNumber()]; // Allocate space for best partition
     DiscreteParticleSwarmWithSA pso = new DiscreteParticleSwarmWithSA();
+    pso.setRunControl(cl.createRunControl(u)); // Optional time limit and stagnation stop
+    pso.configure(cl.getConfig());             // Optional tuned parameters
     u.startRun();                              // Mark the start of run
     float bestCost = pso.run(bestSolution, u); // Run Particle Swarm Optimization
     u.endRun();                                // Mark the end of run
+    cl.closeEvents();                          // Let --events print the last improvements
     // Print out results
     u.reportResult("Particle Swarm Optimization", bestCost, bestSolution);
     // Append results in file costs.txt
@@ -275,6 +554,21 @@ class SAForDPSO {
   // parameters for adjustment
   private double initialTemp = 10.0;
   private int iterationTimes = 500;
+  private boolean adaptiveCooling = true;  // Adaptive schedule, or the fixed one: t = 0.95 * t every iterationTimes moves
+  private String acceptance = "metropolis"; // Acceptance criterion, see AcceptanceCriterion
+  private RunControl control = new RunControl();
+
+  // Stop at the deadline or on cancellation of @control
+  public void setRunControl(RunControl control) {
+    this.control = control;
+  }
+
+  // Take initialTemp, iterationTimes and the acceptance criterion from @config
+  public void configure(SolverConfig config) {
+    initialTemp = config.getRefineInitialTemp();
+    iterationTimes = config.getRefineIterationTimes();
+    acceptance = config.getAcceptance();
+  }
   
   // Use simulated annealing to find a better neighbor for bestSolution[][]
   public float run(int bestSolution[][], Utilities u) {
@@ -284,25 +578,37 @@ class SAForDPSO {
     int p[][] = new int[materialNumber][deptNumber];  // Allocate space for current partition
     u.copyArray(bestSolution, p);
     float currObjValue = u.objectiveValue(p);         // Find out its objective value
+    ZobristTable zobrist = u.getZobrist();
+    long currHash = zobrist.hash(p);                  // Hash of p[][], updated on every accepted move
     float bestObjValue = currObjValue;                // bestSolution[][] is the best partition seen so far
     u.copyArray(p, bestSolution);                     // Record it
    
-    int neighbor[][] = new int[u.getMaterialNumber()][deptNumber]; // Allocate space for a neighbor solution
-    double t = initialTemp;             // Initial temperature; parameter for adjustment
-    while (t > 0.01) {                  // While not frozen; parameter for adjustment
-      for (int l = 0; l < iterationTimes; l++) {  // 1000 is parameter for adjustment 
-        u.copyArray(p, neighbor);
-        u.randomSwap(neighbor);         // neighbor[] is now a neighbor of p[][]
-        float newCost = u.objectiveValue(neighbor);
-        float delta = newCost - currObjValue;
-        // Probability to accept a worsening neighbor
-        double acceptProbability = Math.exp(delta * 200/t);
+    AcceptanceCriterion criterion = AcceptanceCriterion.create(acceptance, 200);
+    CoolingSchedule schedule = (adaptiveCooling && criterion.usesTemperature())
+                               ? CoolingSchedule.adaptive(iterationTimes, 200, initialTemp)
+                               : CoolingSchedule.fixed(initialTemp, 0.95, iterationTimes);
+    schedule.start(p, currObjValue, u); // Initial temperature
+    criterion.start(currObjValue);
+    while (!schedule.isFrozen() && !control.shouldStop()) { // While not frozen
+      int moves = schedule.getMovesPerLevel();
+      criterion.startLevel(schedule.getTemperature(), moves);
+      float levelStartObjValue = bestObjValue;
+      for (int l = 0; l < moves && !control.shouldStop(); l++) {
+        int cell = u.randomSwap(p, currHash);        // p[][] is now the neighbor, flipped back if rejected
+        if (cell == -1)
+          continue;                                  // No feasible flip found this time
+        long neighborHash = currHash ^ zobrist.key(cell);
+        float newCost = u.cachedObjectiveValue(p, neighborHash);
         // If the neighbor is better, take it as new current solution
-        // Otherwise take it with probability acceptProbability
-        if ((delta >= 0) || (r.nextDouble() < acceptProbability)) {
+        // Otherwise the criterion decides, e.g. with probability exp(delta * 200 / t)
+        boolean accepted = criterion.accept(currObjValue, newCost, r);
+        schedule.recordMove(newCost - currObjValue, accepted);
+        if (!accepted)
+          p[cell / deptNumber][cell % deptNumber] ^= 1;  // Undo the flip
+        else {
           // Accept the neighbor
-          u.copyArray(neighbor, p);
           currObjValue = newCost;
+          currHash = neighborHash;
           // If the new solution is the best seen so far, record it
           if (currObjValue > bestObjValue) {  
             bestObjValue = currObjValue;
@@ -310,7 +616,7 @@ class SAForDPSO {
           }
         }
       }
-        t = 0.95*t;   // Reduce temperature
+      schedule.endLevel(bestObjValue > levelStartObjValue);  // Reduce temperature
     }
     return bestObjValue;
   }
@@ -0,0 +1,125 @@
+// Ana Wu, Pace University, April 2016
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * ElitePool
+ * A bounded set of good, diverse feasible solutions, fed by the solvers through RunControl.offerElite()
+ * and read by PathRelinking. Solutions are kept as bitsets, cell i * deptNum + j in bit (c & 63) of word c >>> 6.
+ *
+ * An offer is taken only if it is not already in the pool, by Zobrist hash, and then:
+ *   - if it lies within minDistance flips (Hamming distance) of an elite, it replaces that elite when better,
+ *     so the pool holds one representative per region of the search space;
+ *   - otherwise it is added, replacing the worst elite once the pool is full.
+ * An offer no better than the worst elite of a full pool is rejected before its hash is computed, so solvers may
+ * offer often. Every elite gets a new id when it enters, so a reader can tell which elites it has seen.
+ * Methods are synchronized, so solvers on several threads may share one pool.
+ */
+public class ElitePool {
+  private final int capacity;          // Maximum amount of elites
+  private final int minDistance;       // Closer solutions count as one region of the search space
+  private final ZobristTable zobrist;
+  private final int materialNum;
+  private final int deptNum;
+  private final List<Elite> elites = new ArrayList<Elite>(); // Best first
+  private long nextId = 0;
+
+  // Class constructor, keeping at most @capacity elites at least @minDistance flips apart, hashed with the keys of u
+  public ElitePool(int capacity, int minDistance, Utilities u) {
+    this.capacity = Math.max(1, capacity);
+    this.minDistance = minDistance;
+    zobrist = u.getZobrist();
+    materialNum = u.getMaterialNumber();
+    deptNum = u.getDeptNumber();
+  }
+
+  // Offer feasible solution x[][] with objective value @objValue
+  // x[][] is copied if it is kept, so the caller may keep modifying it
+  // Return true if the solution entered the pool
+  public synchronized boolean offer(float objValue, int x[][]) {
+    int size = elites.size();
+    if (size == capacity && objValue <= elites.get(size - 1).objValue)
+      return false;
+    long hash = zobrist.hash(x);
+    for (Elite e : elites) {
+      if (e.hash == hash)
+        return false;
+    }
+    long bits[] = pack(x);
+    int nearest = -1;
+    int nearestDistance = Integer.MAX_VALUE;
+    for (int k = 0; k < size; ++k) {
+      int d = distance(bits, elites.get(k).bits);
+      if (d < nearestDistance) {
+        nearestDistance = d;
+        nearest = k;
+      }
+    }
+    if (nearestDistance < minDistance) {      // Same region: keep the better of the two
+      if (objValue <= elites.get(nearest).objValue)
+        return false;
+      elites.remove(nearest);
+    }
+    else if (size == capacity)
+      elites.remove(size - 1);                // Drop the worst
+    int at = 0;
+    while (at < elites.size() && elites.get(at).objValue >= objValue)
+      ++at;
+    elites.add(at, new Elite(nextId++, objValue, hash, bits));
+    return true;
+  }
+
+  public synchronized int size() {
+    return elites.size();
+  }
+
+  // Snapshot of the elites, best first
+  public synchronized List<Elite> getElites() {
+    return new ArrayList<Elite>(elites);
+  }
+
+  // Hamming distance between elites @a and @b
+  public static int distance(Elite a, Elite b) {
+    return distance(a.bits, b.bits);
+  }
+
+  private static int distance(long a[], long b[]) {
+    int d = 0;
+    for (int w = 0; w < a.length; ++w)
+      d += Long.bitCount(a[w] ^ b[w]);
+    return d;
+  }
+
+  private long[] pack(int x[][]) {
+    long bits[] = new long[(int) (((long) materialNum * deptNum + 63) >>> 6)];
+    for (int i = 0, c = 0; i < materialNum; ++i) {
+      for (int j = 0; j < deptNum; ++j, ++c)
+        bits[c >>> 6] |= (long) x[i][j] << c;
+    }
+    return bits;
+  }
+
+  // A solution of the pool; immutable
+  public static class Elite {
+    public final long id;              // Order of entry into the pool
+    public final float objValue;
+    public final long hash;            // Zobrist hash of the solution
+    private final long[] bits;
+
+    Elite(long id, float objValue, long hash, long bits[]) {
+      this.id = id;
+      this.objValue = objValue;
+      this.hash = hash;
+      this.bits = bits;
+    }
+
+    // Unpack the solution into x[][]
+    public void copyTo(int x[][]) {
+      int deptNum = x[0].length;
+      for (int i = 0, c = 0; i < x.length; ++i) {
+        for (int j = 0; j < deptNum; ++j, ++c)
+          x[i][j] = (int) (bits[c >>> 6] >>> c) & 1;
+      }
+    }
+  }
+}
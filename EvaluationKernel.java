@@ -0,0 +1,37 @@
+// Ana Wu, Pace University, April 2016
+/*
+ *  Full evaluation of a solution over the flat arrays of an Instance,
+ *  used by Utilities as the backend of fitnessValue(), objectiveValue() and penaltyValue()
+ */
+
+public interface EvaluationKernel {
+  // Evaluate solution x[][], write its objective value into result[0] and its penalty value into result[1]
+  public void evaluate(int x[][], float result[]);
+
+  // Departments from which the vector kernel pays off in auto mode
+  public static final int MIN_VECTOR_DEPTS = 32;
+
+  // Create the kernel selected by system property "kernel":
+  //   auto    VectorKernel for at least MIN_VECTOR_DEPTS departments, ScalarKernel otherwise (default)
+  //   vector  VectorKernel
+  //   scalar  ScalarKernel
+  //   loops   none: return null, Utilities keeps its original nested loops
+  // VectorKernel is built separately with the jdk.incubator.vector module (see vector/VectorKernel.java) and
+  // loaded by name; ScalarKernel is used when it was not built, the module is missing at run time
+  // or VectorKernel.isSupported() rejects the instance
+  public static EvaluationKernel create(Instance instance, float p) {
+    String choice = System.getProperty("kernel", "auto");
+    if (choice.equals("loops"))
+      return null;
+    if (choice.equals("vector") || (choice.equals("auto") && instance.getDeptNumber() >= MIN_VECTOR_DEPTS)) {
+      try {
+        Class<?> vector = Class.forName("VectorKernel");
+        if ((Boolean) vector.getMethod("isSupported", Instance.class).invoke(null, instance))
+          return (EvaluationKernel) vector.getConstructor(Instance.class, float.class).newInstance(instance, p);
+      } catch (ReflectiveOperationException | LinkageError e) {
+        // Not built, or run without --add-modules jdk.incubator.vector
+      }
+    }
+    return new ScalarKernel(instance, p);
+  }
+}
@@ -0,0 +1,136 @@
+// Ana Wu, Pace University, April 2016
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * FitnessCache
+ * Bounded memo of objective and penalty values keyed by the Zobrist hash of a solution,
+ * so a solution visited again is not evaluated again.
+ * 
+ * The cache is set-associative: a key maps to one set of WAYS slots, and a full set
+ * evicts with the CLOCK policy (a slot whose reference bit is set gets a second chance).
+ * Keys and values are kept in primitive arrays; sets are guarded by striped locks,
+ * so the cache can be shared by solvers running on different threads.
+ * 
+ * Values are an objective value and a penalty value packed in one long; either half may be
+ * NaN when only the other one has been computed so far.
+ */
+public class FitnessCache {
+  public static final long MISSING = Long.MIN_VALUE; // Returned by get() for a key not in the cache
+
+  private static final int WAYS = 8;                 // Slots per set
+  private static final int STRIPES = 64;             // Number of locks
+
+  private static final byte EMPTY = 0;
+  private static final byte RESIDENT = 1;
+  private static final byte REFERENCED = 2;
+
+  private final long[] keys;
+  private final long[] values;
+  private final byte[] state;                        // EMPTY, RESIDENT or REFERENCED for each slot
+  private final int[] hands;                         // CLOCK hand of each set
+  private final int setMask;
+  private final Object[] locks = new Object[STRIPES];
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  // Class constructor, keeping about @capacity entries (rounded down to a power of two)
+  public FitnessCache(int capacity) {
+    int sets = Integer.highestOneBit(Math.max(1, capacity / WAYS));
+    setMask = sets - 1;
+    keys = new long[sets * WAYS];
+    values = new long[sets * WAYS];
+    state = new byte[sets * WAYS];
+    hands = new int[sets];
+    for (int k = 0; k < STRIPES; ++k)
+      locks[k] = new Object();
+  }
+
+  // Pack @objective and @penalty into one cache value
+  public static long pack(float objective, float penalty) {
+    objective += 0.0f;                               // -0.0 becomes 0.0, so a value never equals MISSING
+    return ((long) Float.floatToRawIntBits(objective) << 32) | (Float.floatToRawIntBits(penalty) & 0xffffffffL);
+  }
+
+  // Objective value in a packed cache value, NaN if it was not computed
+  public static float objective(long value) {
+    return Float.intBitsToFloat((int) (value >>> 32));
+  }
+
+  // Penalty value in a packed cache value, NaN if it was not computed
+  public static float penalty(long value) {
+    return Float.intBitsToFloat((int) value);
+  }
+
+  // Return the packed value stored for @key, or MISSING
+  public long get(long key) {
+    int set = setOf(key);
+    int base = set * WAYS;
+    synchronized (locks[set & (STRIPES - 1)]) {
+      for (int w = 0; w < WAYS; ++w) {
+        if (state[base + w] != EMPTY && keys[base + w] == key) {
+          state[base + w] = REFERENCED;
+          return values[base + w];
+        }
+      }
+    }
+    return MISSING;
+  }
+
+  // Store packed @value for @key, evicting an entry of the same set if it is full
+  public void put(long key, long value) {
+    int set = setOf(key);
+    int base = set * WAYS;
+    synchronized (locks[set & (STRIPES - 1)]) {
+      int empty = -1;
+      for (int w = 0; w < WAYS; ++w) {
+        if (state[base + w] == EMPTY) {
+          if (empty < 0)
+            empty = w;
+        } else if (keys[base + w] == key) {
+          values[base + w] = value;
+          return;
+        }
+      }
+      int slot = empty;
+      if (slot < 0) {                                // Set is full, run the CLOCK hand
+        int hand = hands[set];
+        while (state[base + hand] == REFERENCED) {
+          state[base + hand] = RESIDENT;             // Second chance
+          hand = (hand + 1) % WAYS;
+        }
+        slot = hand;
+        hands[set] = (hand + 1) % WAYS;
+      }
+      keys[base + slot] = key;
+      values[base + slot] = value;
+      state[base + slot] = RESIDENT;
+    }
+  }
+
+  // Count a lookup for the hit rate
+  public void recordLookup(boolean hit) {
+    if (hit)
+      hits.increment();
+    else
+      misses.increment();
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  // Share of lookups answered from the cache
+  public double getHitRate() {
+    long h = hits.sum();
+    long total = h + misses.sum();
+    return (total == 0) ? 0 : (double) h / total;
+  }
+
+  private int setOf(long key) {
+    return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & setMask;
+  }
+}
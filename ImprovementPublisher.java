@@ -0,0 +1,287 @@
+// Ana Wu, Pace University, April 2016
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * ImprovementPublisher
+ * A java.util.concurrent.Flow publisher of the improvements of a run, so a dashboard or an approval workflow
+ * can follow the incumbent and act on a good enough solution (e.g. by cancelling the RunControl) long before
+ * the run ends. Set it on the RunControl, see RunControl.setImprovementPublisher(); every solution published
+ * there that beats all earlier ones becomes an Event with its objective value, penalty value, the time since
+ * the publisher was created and the cells that changed since the subscriber's previous event.
+ *
+ * submit() never blocks the solver: it packs the solution into a bitset, one bit per cell
+ * (cell i * deptNum + j in bit (c & 63) of word c >>> 6), swaps it in as the latest one and wakes the
+ * subscribers. Each subscriber is served on the executor and only ever gets the latest improvement,
+ * so one that requests slowly skips the ones in between (latest wins) instead of queueing them.
+ * Diffs are against the solution that subscriber last received, so they stay exact across skipped events;
+ * the first event of a subscriber lists the cells set to 1. The penalty value is computed on the executor too.
+ * After the run, close() and awaitCompletion() let the subscribers take the last improvement before the caller
+ * goes on, e.g. to print the results and exit while delivery runs on daemon threads.
+ */
+public class ImprovementPublisher implements Flow.Publisher<ImprovementPublisher.Event>, AutoCloseable {
+  private final Utilities u;
+  private final Executor executor;
+  private final long start = System.nanoTime();    // Elapsed times are measured from here
+  private final AtomicReference<Snapshot> latest = new AtomicReference<Snapshot>(null);
+  private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+  private volatile boolean closed = false;
+
+  // Class constructor, for solutions of the instance loaded in @u, serving subscribers on the common pool
+  public ImprovementPublisher(Utilities u) {
+    this(u, ForkJoinPool.commonPool());
+  }
+
+  // Class constructor, for solutions of the instance loaded in @u, serving subscribers on @executor
+  public ImprovementPublisher(Utilities u, Executor executor) {
+    this.u = u;
+    this.executor = executor;
+  }
+
+  // Publish solution x[][] with objective value @objValue if it beats every solution submitted so far
+  // x[][] is packed, so the caller may keep modifying it. Never blocks
+  // Return true if it was an improvement
+  public boolean submit(float objValue, int x[][]) {
+    Snapshot current = latest.get();
+    if (closed || (current != null && !(objValue > current.objValue)))
+      return false;
+    long elapsed = System.nanoTime() - start;
+    long bits[] = pack(x);
+    while (true) {
+      long sequence = (current == null) ? 1 : current.sequence + 1;
+      if (latest.compareAndSet(current, new Snapshot(sequence, objValue, elapsed, bits)))
+        break;
+      current = latest.get();                    // Another solver submitted first, compare again
+      if (current != null && !(objValue > current.objValue))
+        return false;
+    }
+    for (Subscription s : subscriptions)
+      s.signal();
+    return true;
+  }
+
+  // Start serving @subscriber; it first gets the latest improvement, if there is one
+  @Override
+  public void subscribe(Flow.Subscriber<? super Event> subscriber) {
+    Subscription s = new Subscription(subscriber);
+    subscriber.onSubscribe(s);
+    subscriptions.add(s);
+    s.signal();
+  }
+
+  // Complete every subscriber once it has got the latest improvement; later submits are ignored
+  @Override
+  public void close() {
+    closed = true;
+    for (Subscription s : subscriptions)
+      s.signal();
+  }
+
+  // Wait up to @millis milliseconds until no subscriber is left, each one completed or cancelled, e.g. after close()
+  // Return true if none is left
+  public boolean awaitCompletion(long millis) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    synchronized (subscriptions) {
+      while (!subscriptions.isEmpty()) {
+        long left = deadline - System.nanoTime();
+        if (left <= 0)
+          return false;
+        TimeUnit.NANOSECONDS.timedWait(subscriptions, left);
+      }
+    }
+    return true;
+  }
+
+  public int getSubscriberCount() {
+    return subscriptions.size();
+  }
+
+  // A subscriber that prints every event it gets to @out, one per line
+  public static Flow.Subscriber<Event> printer(PrintStream out) {
+    return new Flow.Subscriber<Event>() {
+      private Flow.Subscription subscription;
+
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+      }
+
+      @Override
+      public void onNext(Event e) {
+        out.println("Improvement " + e.sequence + ": objective value = " + e.objValue + ", penalty = " + e.penalty
+                    + ", " + e.elapsedNanos / 1000000L + " ms, " + e.changedCells.length + " cells changed");
+        subscription.request(1);
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        t.printStackTrace();
+      }
+
+      @Override
+      public void onComplete() {
+      }
+    };
+  }
+
+  private long[] pack(int x[][]) {
+    int deptNum = x[0].length;
+    long bits[] = new long[(int) (((long) x.length * deptNum + 63) >>> 6)];
+    for (int i = 0, c = 0; i < x.length; ++i) {
+      for (int j = 0; j < deptNum; ++j, ++c)
+        bits[c >>> 6] |= (long) x[i][j] << c;
+    }
+    return bits;
+  }
+
+  // An improvement as a subscriber sees it; immutable
+  public static class Event {
+    public final long sequence;        // Number of the improvement in the run, from 1; gaps are skipped ones
+    public final float objValue;
+    public final float penalty;        // Penalty value of the solution, 0 when it is feasible
+    public final long elapsedNanos;    // Time from the creation of the publisher to the submit
+    public final int[] changedCells;   // Cells i * deptNum + j flipped since the previous event, ascending
+    public final int deptNum;
+
+    Event(long sequence, float objValue, float penalty, long elapsedNanos, int changedCells[], int deptNum) {
+      this.sequence = sequence;
+      this.objValue = objValue;
+      this.penalty = penalty;
+      this.elapsedNanos = elapsedNanos;
+      this.changedCells = changedCells;
+      this.deptNum = deptNum;
+    }
+
+    // Turn x[][], the solution of the previous event (all 0 before the first one), into the solution of this one
+    public void applyTo(int x[][]) {
+      for (int c : changedCells)
+        x[c / deptNum][c % deptNum] ^= 1;
+    }
+  }
+
+  // Immutable latest improvement
+  private static final class Snapshot {
+    final long sequence;
+    final float objValue;
+    final long elapsedNanos;
+    final long[] bits;
+
+    Snapshot(long sequence, float objValue, long elapsedNanos, long bits[]) {
+      this.sequence = sequence;
+      this.objValue = objValue;
+      this.elapsedNanos = elapsedNanos;
+      this.bits = bits;
+    }
+  }
+
+  // Delivery to one subscriber. signal() schedules drain() on the executor unless it is already scheduled;
+  // pending counts the signals since, so a signal during drain() makes it look once more
+  private final class Subscription implements Flow.Subscription {
+    private final Flow.Subscriber<? super Event> subscriber;
+    private final AtomicLong demand = new AtomicLong(0);
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private volatile boolean cancelled = false;
+    private volatile Throwable error = null;      // Bad request() to report
+    private Snapshot delivered = null;            // Last snapshot sent, only touched in drain()
+    private int x[][] = null;                     // Its solution, for the penalty value
+
+    Subscription(Flow.Subscriber<? super Event> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0)
+        error = new IllegalArgumentException("non-positive request " + n);
+      else
+        demand.getAndAccumulate(n, (d, m) -> (d + m < 0) ? Long.MAX_VALUE : d + m);  // Saturate on overflow
+      signal();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      subscriptions.remove(this);
+      synchronized (subscriptions) {
+        subscriptions.notifyAll();                // Wake awaitCompletion()
+      }
+    }
+
+    void signal() {
+      if (pending.getAndIncrement() == 0) {
+        try {
+          executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+          cancel();
+          subscriber.onError(e);
+        }
+      }
+    }
+
+    private void drain() {
+      int missed = 1;
+      do {
+        if (!cancelled) {
+          Snapshot s = latest.get();
+          if (error != null) {
+            cancel();
+            subscriber.onError(error);
+          }
+          else if (s != null && s != delivered && demand.get() > 0) {
+            Event e = next(s);
+            if (demand.get() != Long.MAX_VALUE)
+              demand.decrementAndGet();
+            try {
+              subscriber.onNext(e);
+            } catch (Throwable t) {
+              cancel();
+              subscriber.onError(t);
+            }
+          }
+          else if (closed && s == delivered) {
+            cancelled = true;
+            try {
+              subscriber.onComplete();
+            } finally {
+              cancel();                           // Only now, so awaitCompletion() returns after onComplete()
+            }
+          }
+        }
+        missed = pending.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    // Event for @s, diffed against the snapshot delivered before
+    private Event next(Snapshot s) {
+      int materialNum = u.getMaterialNumber();
+      int deptNum = u.getDeptNumber();
+      if (x == null)
+        x = new int[materialNum][deptNum];
+      int changed = 0;
+      for (int w = 0; w < s.bits.length; ++w)
+        changed += Long.bitCount(s.bits[w] ^ ((delivered == null) ? 0 : delivered.bits[w]));
+      int cells[] = new int[changed];
+      for (int w = 0, k = 0; w < s.bits.length; ++w) {
+        long diff = s.bits[w] ^ ((delivered == null) ? 0 : delivered.bits[w]);
+        while (diff != 0) {
+          int c = (w << 6) + Long.numberOfTrailingZeros(diff);
+          cells[k++] = c;
+          x[c / deptNum][c % deptNum] ^= 1;
+          diff &= diff - 1;
+        }
+      }
+      delivered = s;
+      return new Event(s.sequence, s.objValue, u.penaltyValue(x), s.elapsedNanos, cells, deptNum);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+// Ana Wu, Pace University, April 2016
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Incumbent
+ * Best-so-far objective value and solution of a run, safe to read from any thread
+ * while the solver keeps working. The pair is kept in an immutable snapshot behind
+ * an AtomicReference, so readers never see a value that belongs to another solution
+ * and neither readers nor writers take a lock.
+ */
+public class Incumbent {
+  private final AtomicReference<Snapshot> best = new AtomicReference<Snapshot>(null);
+
+  // Offer a solution with objective value @objValue, keep it if it beats the incumbent.
+  // The solution is copied, so the caller may keep modifying x[][] afterwards.
+  // Return true if the incumbent was replaced
+  public boolean offer(float objValue, int x[][]) {
+    Snapshot current = best.get();
+    if (current != null && !(objValue > current.objValue))
+      return false;
+    Snapshot candidate = new Snapshot(objValue, copyOf(x));
+    while (true) {
+      if (best.compareAndSet(current, candidate))
+        return true;
+      current = best.get();                     // Somebody else published first, compare again
+      if (current != null && !(objValue > current.objValue))
+        return false;
+    }
+  }
+
+  // Return true if any solution has been published
+  public boolean isPresent() {
+    return best.get() != null;
+  }
+
+  // Best objective value published so far, or -Float.MAX_VALUE if there is none
+  public float getBestObjValue() {
+    Snapshot current = best.get();
+    return (current == null) ? -Float.MAX_VALUE : current.objValue;
+  }
+
+  // Return a copy of the best solution published so far, or null if there is none
+  public int[][] getBestSolution() {
+    Snapshot current = best.get();
+    return (current == null) ? null : copyOf(current.solution);
+  }
+
+  // Copy the best solution into to[][], return its objective value
+  // Return -Float.MAX_VALUE and leave to[][] untouched if there is none
+  public float copyBestSolution(int to[][]) {
+    Snapshot current = best.get();
+    if (current == null)
+      return -Float.MAX_VALUE;
+    for (int i = 0; i < to.length; ++i)
+      System.arraycopy(current.solution[i], 0, to[i], 0, to[i].length);
+    return current.objValue;
+  }
+
+  // Copy the best solution into to[][] if its objective value beats @objValue, return that value
+  // Return -Float.MAX_VALUE and leave to[][] untouched otherwise
+  public float copyBestSolutionIfBetter(int to[][], float objValue) {
+    Snapshot current = best.get();
+    if (current == null || !(current.objValue > objValue))
+      return -Float.MAX_VALUE;
+    for (int i = 0; i < to.length; ++i)
+      System.arraycopy(current.solution[i], 0, to[i], 0, to[i].length);
+    return current.objValue;
+  }
+
+  private static int[][] copyOf(int x[][]) {
+    int[][] result = new int[x.length][];
+    for (int i = 0; i < x.length; ++i)
+      result[i] = x[i].clone();
+    return result;
+  }
+
+  // Immutable pair of objective value and solution
+  private static final class Snapshot {
+    final float objValue;
+    final int[][] solution;
+
+    Snapshot(float objValue, int[][] solution) {
+      this.objValue = objValue;
+      this.solution = solution;
+    }
+  }
+}
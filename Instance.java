@@ -0,0 +1,272 @@
+// Ana Wu, Pace University, April 2016
+import java.util.Arrays;
+
+/*
+ * Instance
+ * Immutable problem data in flat primitive arrays, built once by Utilities.readGraph().
+ * The preference matrix is kept twice:
+ *   prefRow[i * deptNum + j]     row-major, for scanning the departments of one material
+ *   prefCol[j * materialNum + i] column-major, for scanning the materials of one department
+ * For the fixed-point cost model, preferences and costs are also kept as scaled integers:
+ *   prefFixed[i * deptNum + j] = round(preference[i][j] * PREF_SCALE)
+ *   costFixed[i]               = round(cost[i] * COST_SCALE)
+ * A cost share is then an exact integer ceiling division,
+ *   ceil(prefFixed[i][j] * costFixed[i] / (sum over j of prefFixed[i][j] * COST_SCALE)),
+ * and all sums are integers, so they do not depend on the order of summation.
+ * Indexes built once here, so that helpers do not rescan the materials on every call:
+ *   categoryMaterials[categoryStart[k] .. categoryStart[k + 1] - 1]   materials of category k, in increasing order
+ *   deptByPreference[j * materialNum + n]   materials by decreasing preference value of department j
+ *   byCost[n]                               materials by decreasing cost
+ * Ties keep the order of the material indexes.
+ * The arrays returned by the getters are shared and must not be modified.
+ */
+public class Instance {
+  public static final int PREF_SCALE = 1000;  // Preference values are kept to 3 decimals
+  public static final int COST_SCALE = 100;   // Costs are kept to 2 decimals
+
+  private final int materialNum;       // Amount of materials
+  private final int deptNum;           // Amount of departments
+  private final int categoryNum;       // Amount of categories
+  private final int[] budget;          // Budget for each department
+  private final float[] prefRow;       // Preference value matrix, row-major
+  private final float[] prefCol;       // Preference value matrix, column-major
+  private final int[] belongs;         // Category index for each material
+  private final float[] cost;          // Cost of each material
+  private final int[] categoryUpper;   // Upper bound of the amount of materials in each category
+  private final int[] categoryLower;   // Lower bound of the amount of materials in each category
+  private final int totalBudget;       // Sum of all budgets
+  private final int[] prefFixed;       // Scaled preference value matrix, row-major
+  private final long[] costFixed;      // Scaled cost of each material
+  private final int[] categoryStart;   // First index in categoryMaterials of each category, and materialNum
+  private final int[] categoryMaterials; // Materials grouped by category
+  private final int[] deptByPreference;  // Materials of each department by decreasing preference value
+  private final int[] byCost;            // Materials by decreasing cost
+
+  // Class constructor from the arrays read by Utilities.readGraph()
+  public Instance(int[] budget, float[][] preference, int[] belongs, float[] cost,
+                  int[] categoryLower, int[] categoryUpper) {
+    materialNum = belongs.length;
+    deptNum = budget.length;
+    categoryNum = categoryUpper.length;
+    this.budget = budget.clone();
+    this.belongs = belongs.clone();
+    this.cost = cost.clone();
+    this.categoryUpper = categoryUpper.clone();
+    this.categoryLower = categoryLower.clone();
+    prefRow = new float[materialNum * deptNum];
+    prefCol = new float[deptNum * materialNum];
+    for (int i = 0; i < materialNum; ++i) {
+      for (int j = 0; j < deptNum; ++j) {
+        prefRow[i * deptNum + j] = preference[i][j];
+        prefCol[j * materialNum + i] = preference[i][j];
+      }
+    }
+    int total = 0;
+    for (int j = 0; j < deptNum; ++j)
+      total += budget[j];
+    totalBudget = total;
+
+    prefFixed = new int[materialNum * deptNum];
+    for (int k = 0; k < prefRow.length; ++k)
+      prefFixed[k] = Math.round(prefRow[k] * PREF_SCALE);
+    costFixed = new long[materialNum];
+    for (int i = 0; i < materialNum; ++i)
+      costFixed[i] = Math.round((double) cost[i] * COST_SCALE);
+
+    categoryStart = new int[categoryNum + 1];
+    for (int i = 0; i < materialNum; ++i)
+      ++categoryStart[belongs[i] + 1];
+    for (int k = 0; k < categoryNum; ++k)
+      categoryStart[k + 1] += categoryStart[k];
+    categoryMaterials = new int[materialNum];
+    int[] next = Arrays.copyOf(categoryStart, categoryNum);
+    for (int i = 0; i < materialNum; ++i)
+      categoryMaterials[next[belongs[i]]++] = i;
+
+    deptByPreference = new int[deptNum * materialNum];
+    float[] column = new float[materialNum];
+    for (int j = 0; j < deptNum; ++j) {
+      System.arraycopy(prefCol, j * materialNum, column, 0, materialNum);
+      sortDescending(column, deptByPreference, j * materialNum);
+    }
+    byCost = new int[materialNum];
+    sortDescending(this.cost, byCost, 0);
+  }
+
+  // Write the indexes of @values by decreasing value into order[@offset ..], ties by increasing index
+  // Each value and index is packed into one long, so this is a primitive sort without boxing
+  private static void sortDescending(float values[], int order[], int offset) {
+    long[] keys = new long[values.length];
+    for (int i = 0; i < values.length; ++i) {
+      int bits = Float.floatToIntBits(values[i]);
+      bits ^= (bits >> 31) & 0x7FFFFFFF;      // Same order as the float values, as signed ints
+      keys[i] = ((long) ~bits << 32) | i;       // ~ reverses the order
+    }
+    Arrays.sort(keys);
+    for (int n = 0; n < keys.length; ++n)
+      order[offset + n] = (int) keys[n];
+  }
+
+  // Return true if @other has the same budgets, preference values, categories, costs and category bounds
+  public boolean hasSameData(Instance other) {
+    return Arrays.equals(budget, other.budget) && Arrays.equals(prefRow, other.prefRow)
+        && Arrays.equals(belongs, other.belongs) && Arrays.equals(cost, other.cost)
+        && Arrays.equals(categoryLower, other.categoryLower) && Arrays.equals(categoryUpper, other.categoryUpper);
+  }
+
+  public int getMaterialNumber() {
+    return materialNum;
+  }
+
+  public int getDeptNumber() {
+    return deptNum;
+  }
+
+  public int getCategoryNumber() {
+    return categoryNum;
+  }
+
+  public int[] getBudget() {
+    return budget;
+  }
+
+  public int getTotalBudget() {
+    return totalBudget;
+  }
+
+  public float[] getPrefRow() {
+    return prefRow;
+  }
+
+  public float[] getPrefCol() {
+    return prefCol;
+  }
+
+  public int[] getPrefFixed() {
+    return prefFixed;
+  }
+
+  public long[] getCostFixed() {
+    return costFixed;
+  }
+
+  // Divisor of the fixed-point cost shares of a material with scaled preference total @totalPref > 0
+  public static long shareDivisor(long totalPref) {
+    return totalPref * COST_SCALE;
+  }
+
+  // Fixed-point cost share ceil(@pref * @materialCost / @divisor), with @reciprocal = 1.0 / @divisor
+  // The quotient is estimated with a multiplication by the reciprocal, which is off by at most one
+  // for operands below 2^53, then corrected exactly with integer multiplications: no division per share
+  public static long fixedShare(long pref, long materialCost, long divisor, double reciprocal) {
+    long dividend = pref * materialCost;
+    long q = (long) Math.ceil(dividend * reciprocal);
+    if (q * divisor < dividend)
+      ++q;
+    else if ((q - 1) * divisor >= dividend)
+      --q;
+    return q;
+  }
+
+  // First index of each category in getCategoryMaterials(), followed by materialNum
+  public int[] getCategoryStart() {
+    return categoryStart;
+  }
+
+  // Materials grouped by category, see getCategoryStart()
+  public int[] getCategoryMaterials() {
+    return categoryMaterials;
+  }
+
+  // Amount of materials in category @category
+  public int getCategorySize(int category) {
+    return categoryStart[category + 1] - categoryStart[category];
+  }
+
+  // Materials by decreasing preference value of department j at [j * materialNum, (j + 1) * materialNum)
+  public int[] getDeptByPreference() {
+    return deptByPreference;
+  }
+
+  // Materials by decreasing cost
+  public int[] getByCost() {
+    return byCost;
+  }
+
+  public int[] getBelongs() {
+    return belongs;
+  }
+
+  public float[] getCost() {
+    return cost;
+  }
+
+  public int[] getCategoryUpper() {
+    return categoryUpper;
+  }
+
+  public int[] getCategoryLower() {
+    return categoryLower;
+  }
+
+  // Objective value from per-department sums of a solution:
+  // sum of preference values, amount of materials and actual cost of each department
+  // @p weights the average preference value against the budget execution rate
+  public float objectiveFromSums(float prefByDept[], int numByDept[], int costByDept[], float p) {
+    float totalAvePref = 0;
+    int totalCost = 0;
+    for (int j = 0; j < deptNum; ++j) {
+      if (numByDept[j] != 0)
+        totalAvePref += (prefByDept[j] / (float) numByDept[j]);
+      totalCost += costByDept[j];
+    }
+    float averPref = totalAvePref / deptNum;
+    float budgetRate = (totalBudget == 0) ? 0 : (float) totalCost / totalBudget;
+    return p * averPref + (1 - p) * budgetRate;
+  }
+
+  // Objective value from the fixed-point sums of a solution: scaled sum of preference values,
+  // amount of materials and actual cost of each department. The sums are exact, and they are
+  // combined in department order in double precision, so equal sums always give the same value
+  public float objectiveFromFixedSums(long prefByDept[], int numByDept[], long costByDept[], float p) {
+    double totalAvePref = 0;
+    long totalCost = 0;
+    for (int j = 0; j < deptNum; ++j) {
+      if (numByDept[j] != 0)
+        totalAvePref += (double) prefByDept[j] / numByDept[j];
+      totalCost += costByDept[j];
+    }
+    double averPref = totalAvePref / PREF_SCALE / deptNum;
+    double budgetRate = (totalBudget == 0) ? 0 : (double) totalCost / totalBudget;
+    return (float) (p * averPref + (1 - p) * budgetRate);
+  }
+
+  // Penalty value from the fixed-point actual cost of each department and the amount of acquired materials by category
+  public float penaltyFromFixedSums(long costByDept[], int numByCategory[]) {
+    float budgetPenalty = 0;
+    for (int j = 0; j < deptNum; ++j)
+      budgetPenalty += Math.max(0.0f, ((float)(costByDept[j] - budget[j]) / budget[j]));
+    return budgetPenalty + categoryPenalty(numByCategory);
+  }
+
+  // Penalty value from the actual cost of each department and the amount of acquired materials by category
+  public float penaltyFromSums(int costByDept[], int numByCategory[]) {
+    float budgetPenalty = 0;
+    for (int j = 0; j < deptNum; ++j)
+      budgetPenalty += Math.max(0.0f, ((float)(costByDept[j] - budget[j]) / budget[j]));
+    return budgetPenalty + categoryPenalty(numByCategory);
+  }
+
+  // Penalty value for category constrains from the amount of acquired materials by category
+  public float categoryPenalty(int numByCategory[]) {
+    float categoryPenalty = 0;
+    for (int k = 0; k < categoryNum; ++k) {
+      int acquiredNum = numByCategory[k];
+      if (acquiredNum > categoryUpper[k])
+        categoryPenalty += Math.max(0.0f, (float)(acquiredNum - categoryUpper[k]) / Math.abs(acquiredNum - categoryLower[k]));
+      if (acquiredNum < categoryLower[k])
+        categoryPenalty += Math.max(0.0f, (float)(categoryLower[k] - acquiredNum) / Math.abs(categoryUpper[k] - acquiredNum));
+    }
+    return categoryPenalty;
+  }
+}
@@ -0,0 +1,111 @@
+// Ana Wu, Pace University, April 2016
+/*
+ * InstanceDelta
+ * One change to the data of an instance, written as
+ *   dept <j> budget <change>
+ *   material <i> cost <change>
+ *   material <i> dept <j> preference <change>
+ *   category <k> lower <change>
+ *   category <k> upper <change>
+ * where <change> is a new value (12 or =12), an amount to add (+12, -12) or a percentage (+10%, -10%).
+ * Example: "dept 3 budget -10%"
+ */
+public class InstanceDelta {
+  public enum Field { BUDGET, COST, PREFERENCE, LOWER, UPPER }
+
+  private final Field field;
+  private final int index;        // Department, material or category
+  private final int dept;         // Department of a preference value, -1 otherwise
+  private final char op;          // '=' new value, '+' amount to add, '%' percentage
+  private final double amount;
+  private final String spec;
+
+  private InstanceDelta(Field field, int index, int dept, char op, double amount, String spec) {
+    this.field = field;
+    this.index = index;
+    this.dept = dept;
+    this.op = op;
+    this.amount = amount;
+    this.spec = spec;
+  }
+
+  // Parse @spec, throw IllegalArgumentException if it does not follow the forms above
+  public static InstanceDelta parse(String spec) {
+    String[] t = spec.trim().replace('\u2212', '-').toLowerCase().split("\\s+");
+    try {
+      if (t.length == 4 && t[0].equals("dept") && t[2].equals("budget"))
+        return create(Field.BUDGET, Integer.parseInt(t[1]), -1, t[3], spec);
+      if (t.length == 4 && t[0].equals("material") && t[2].equals("cost"))
+        return create(Field.COST, Integer.parseInt(t[1]), -1, t[3], spec);
+      if (t.length == 6 && t[0].equals("material") && t[2].equals("dept") && t[4].equals("preference"))
+        return create(Field.PREFERENCE, Integer.parseInt(t[1]), Integer.parseInt(t[3]), t[5], spec);
+      if (t.length == 4 && t[0].equals("category") && t[2].equals("lower"))
+        return create(Field.LOWER, Integer.parseInt(t[1]), -1, t[3], spec);
+      if (t.length == 4 && t[0].equals("category") && t[2].equals("upper"))
+        return create(Field.UPPER, Integer.parseInt(t[1]), -1, t[3], spec);
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    throw new IllegalArgumentException("Unknown instance change \"" + spec + "\"");
+  }
+
+  private static InstanceDelta create(Field field, int index, int dept, String change, String spec) {
+    char op = '=';
+    if (change.endsWith("%")) {
+      op = '%';
+      change = change.substring(0, change.length() - 1);
+    }
+    else if (change.startsWith("+") || change.startsWith("-"))
+      op = '+';
+    else if (change.startsWith("="))
+      change = change.substring(1);
+    return new InstanceDelta(field, index, dept, op, Double.parseDouble(change), spec);
+  }
+
+  public Field getField() {
+    return field;
+  }
+
+  // Department, material or category changed
+  public int getIndex() {
+    return index;
+  }
+
+  // Apply the change to the arrays of an instance, throw IllegalArgumentException for an index out of range
+  public void applyTo(int[] budget, float[][] preference, float[] cost, int[] categoryLower, int[] categoryUpper) {
+    try {
+      switch (field) {
+        case BUDGET:
+          budget[index] = (int) Math.round(change(budget[index]));
+          break;
+        case COST:
+          cost[index] = (float) change(cost[index]);
+          break;
+        case PREFERENCE:
+          preference[index][dept] = (float) change(preference[index][dept]);
+          break;
+        case LOWER:
+          categoryLower[index] = (int) Math.round(change(categoryLower[index]));
+          break;
+        case UPPER:
+          categoryUpper[index] = (int) Math.round(change(categoryUpper[index]));
+          break;
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Index out of range in \"" + spec + "\"");
+    }
+  }
+
+  private double change(double value) {
+    switch (op) {
+      case '+': return value + amount;
+      case '%': return value * (1 + amount / 100);
+      default: return amount;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return spec;
+  }
+}
@@ -0,0 +1,153 @@
+// Ana Wu, Pace University, April 2016
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/*
+ * Instance generator
+ * Write a random instance in the format read by Utilities.readGraph():
+ *   materialNum,deptNum,categoryNum
+ *   category of each material
+ *   cost of each material
+ *   budget of each department
+ *   lower bound of each category
+ *   upper bound of each category
+ *   one line of preference values per material
+ *
+ * Preference values are integers in [1, maxPreference] with probability preferenceDensity, 0 otherwise.
+ * The total budget is budgetTightness times the cost of all materials, split evenly (+-20%) among departments.
+ * Category bounds go from [0, size] for boundTightness 0 to [size / 2, size / 2] for boundTightness 1;
+ * lower bounds are scaled down when needed so that a random feasible solution always exists.
+ *
+ * Usage: java InstanceGenerator fileName materials departments categories
+ *                               [preferenceDensity budgetTightness boundTightness seed]
+ */
+public class InstanceGenerator {
+
+  // parameters for adjustment
+  private int maxPreference = 10;      // Preference values are in [0, maxPreference]
+  private int minCost = 10;            // Material costs are in [minCost, maxCost]
+  private int maxCost = 100;
+
+  private int materialNum;
+  private int deptNum;
+  private int categoryNum;
+  private double preferenceDensity = 0.7;
+  private double budgetTightness = 0.3;
+  private double boundTightness = 0.3;
+  private long seed = 1;
+
+  // Class constructor for an instance of the given size
+  public InstanceGenerator(int materialNum, int deptNum, int categoryNum) {
+    if (materialNum < 1 || deptNum < 1 || categoryNum < 1 || categoryNum > materialNum)
+      throw new IllegalArgumentException("Invalid instance size " + materialNum + "x" + deptNum + "x" + categoryNum);
+    this.materialNum = materialNum;
+    this.deptNum = deptNum;
+    this.categoryNum = categoryNum;
+  }
+
+  public InstanceGenerator setPreferenceDensity(double density) {
+    preferenceDensity = density;
+    return this;
+  }
+
+  public InstanceGenerator setBudgetTightness(double tightness) {
+    budgetTightness = tightness;
+    return this;
+  }
+
+  public InstanceGenerator setBoundTightness(double tightness) {
+    boundTightness = tightness;
+    return this;
+  }
+
+  public InstanceGenerator setSeed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  // Write the instance to @fileName
+  public void write(String fileName) throws IOException {
+    Random r = new Random(seed);
+    int[] belongs = new int[materialNum];
+    int[] categorySize = new int[categoryNum];
+    for (int i = 0; i < materialNum; ++i) {
+      belongs[i] = (i < categoryNum) ? i : r.nextInt(categoryNum);  // Every category has a material
+      ++categorySize[belongs[i]];
+    }
+    int[] cost = new int[materialNum];
+    long totalCost = 0;
+    for (int i = 0; i < materialNum; ++i) {
+      cost[i] = minCost + r.nextInt(maxCost - minCost + 1);
+      totalCost += cost[i];
+    }
+    int[] budget = new int[deptNum];
+    long totalBudget = 0;
+    for (int j = 0; j < deptNum; ++j) {
+      double share = budgetTightness * totalCost / deptNum * (0.8 + 0.4 * r.nextDouble());
+      budget[j] = (int) Math.max(2 * maxCost, Math.round(share));   // Any material fits in any department
+      totalBudget += budget[j];
+    }
+
+    int[] lower = new int[categoryNum];
+    int[] upper = new int[categoryNum];
+    long lowerCost = 0;                  // Worst-case cost of meeting all lower bounds
+    for (int k = 0; k < categoryNum; ++k) {
+      int margin = (int) Math.round(boundTightness * categorySize[k] / 2);
+      lower[k] = margin;
+      upper[k] = Math.max(lower[k], categorySize[k] - margin);
+      lowerCost += (long) lower[k] * maxCost;
+    }
+    if (lowerCost > totalBudget / 2) {   // Keep the lower bounds within half of the total budget
+      double scale = (double) (totalBudget / 2) / lowerCost;
+      for (int k = 0; k < categoryNum; ++k)
+        lower[k] = (int) (lower[k] * scale);
+    }
+
+    try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(fileName)))) {
+      out.println(materialNum + "," + deptNum + "," + categoryNum);
+      out.println(join(belongs));
+      out.println(join(cost));
+      out.println(join(budget));
+      out.println(join(lower));
+      out.println(join(upper));
+      int[] row = new int[deptNum];
+      for (int i = 0; i < materialNum; ++i) {
+        for (int j = 0; j < deptNum; ++j)
+          row[j] = (r.nextDouble() < preferenceDensity) ? 1 + r.nextInt(maxPreference) : 0;
+        out.println(join(row));
+      }
+    }
+  }
+
+  private static String join(int values[]) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < values.length; ++i) {
+      if (i > 0)
+        sb.append(',');
+      sb.append(values[i]);
+    }
+    return sb.toString();
+  }
+
+  public static void main(String args[]) throws IOException {
+    if (args.length < 4) {
+      System.out.println("Usage: java InstanceGenerator fileName materials departments categories"
+                         + " [preferenceDensity budgetTightness boundTightness seed]");
+      return;
+    }
+    InstanceGenerator g = new InstanceGenerator(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                                                Integer.parseInt(args[3]));
+    if (args.length > 4)
+      g.setPreferenceDensity(Double.parseDouble(args[4]));
+    if (args.length > 5)
+      g.setBudgetTightness(Double.parseDouble(args[5]));
+    if (args.length > 6)
+      g.setBoundTightness(Double.parseDouble(args[6]));
+    if (args.length > 7)
+      g.setSeed(Long.parseLong(args[7]));
+    g.write(args[0]);
+  }
+}
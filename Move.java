@@ -0,0 +1,77 @@
+// Ana Wu, Pace University, April 2016
+/*
+ * Move
+ * One step in a neighborhood, evaluated and applied by SolutionState:
+ *   FLIP      switch x[material][dept]
+ *   REASSIGN  x[material][dept] = 0 and x[material][other] = 1
+ *   EXCHANGE  material @other takes over all departments of @material, which is dropped;
+ *             both are in the same category
+ */
+public class Move {
+  public enum Type { FLIP, REASSIGN, EXCHANGE }
+
+  private final Type type;
+  private final int material;
+  private final int dept;
+  private final int other;       // Target department for REASSIGN, incoming material for EXCHANGE
+  private float objective;       // Objective value after the move, set by SolutionState.evaluate()
+
+  private Move(Type type, int material, int dept, int other) {
+    this.type = type;
+    this.material = material;
+    this.dept = dept;
+    this.other = other;
+  }
+
+  public static Move flip(int material, int dept) {
+    return new Move(Type.FLIP, material, dept, -1);
+  }
+
+  public static Move reassign(int material, int fromDept, int toDept) {
+    return new Move(Type.REASSIGN, material, fromDept, toDept);
+  }
+
+  public static Move exchange(int outMaterial, int inMaterial) {
+    return new Move(Type.EXCHANGE, outMaterial, -1, inMaterial);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public int getMaterial() {
+    return material;
+  }
+
+  public int getDept() {
+    return dept;
+  }
+
+  public int getOther() {
+    return other;
+  }
+
+  public float getObjective() {
+    return objective;
+  }
+
+  void setObjective(float objective) {
+    this.objective = objective;
+  }
+
+  // Entry for the tabu list, one range per type so no two moves share a key:
+  //   FLIP      material * deptNum + dept, the form TabuSearch uses for flips
+  //   REASSIGN  materialNum * deptNum + material * deptNum + other, the target cell
+  //   EXCHANGE  2 * materialNum * deptNum + other, the incoming material
+  public int getTabuKey(int materialNum, int deptNum) {
+    int cells = materialNum * deptNum;
+    switch (type) {
+      case REASSIGN:
+        return cells + material * deptNum + other;
+      case EXCHANGE:
+        return 2 * cells + other;
+      default:
+        return material * deptNum + dept;
+    }
+  }
+}
@@ -0,0 +1,11 @@
+// Ana Wu, Pace University, April 2016
+/*
+ *  Neighborhood used by SA and Tabu Search to move from one solution to the next
+ */
+
+public enum Neighborhood {
+  FLIP,        // Switch one entry (0 to 1, or 1 to 0): add or drop a material for a department
+  REASSIGN,    // Move a material from one department to another
+  EXCHANGE,    // Replace an acquired material with a material of the same category that is not acquired
+  COMPOUND     // Any of the above
+}
@@ -0,0 +1,140 @@
+// Ana Wu, Pace University, April 2016
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/*
+ * ParetoArchive
+ * Non-dominated feasible solutions over the two components of the objective value,
+ * the average preference value and the budget execution rate, both maximized.
+ * objectiveValue() weights them with a fixed p; the archive keeps the whole trade-off curve,
+ * from which the best solution for any p can be read afterwards.
+ *
+ * Points are kept in a TreeMap ordered by average preference value. Along a non-dominated front
+ * the budget execution rate then decreases, so a new point is dominated exactly when the first
+ * point with at least its preference value also has at least its rate: the dominance check is
+ * one O(log n) lookup, and the solution is copied only for a point that is kept.
+ * Points the new one dominates are its lower neighbors, removed while their rate is not higher.
+ * Above the capacity, the interior point closest to its two neighbors is dropped; the two ends stay.
+ * Methods are synchronized, so solvers on several threads may share one archive.
+ */
+public class ParetoArchive {
+  private final TreeMap<Float, Point> front = new TreeMap<Float, Point>();  // Points by preference value
+  private final int capacity;                                                // Maximum amount of points
+
+  // Class constructor, keeping at most @capacity points
+  public ParetoArchive(int capacity) {
+    this.capacity = Math.max(2, capacity);
+  }
+
+  // Return true if a point with components @preference and @rate is dominated by, or equal to, a point of the archive
+  public synchronized boolean isDominated(float preference, float rate) {
+    Map.Entry<Float, Point> above = front.ceilingEntry(preference);
+    return above != null && above.getValue().rate >= rate;
+  }
+
+  // Offer solution x[][] with average preference value @preference and budget execution rate @rate
+  // x[][] is copied if the point is kept, so the caller may keep modifying it
+  // Return true if the point entered the archive
+  public synchronized boolean offer(float preference, float rate, int x[][]) {
+    if (isDominated(preference, rate))
+      return false;
+    Iterator<Point> below = front.headMap(preference, true).descendingMap().values().iterator();
+    while (below.hasNext() && below.next().rate <= rate)
+      below.remove();                             // Dominated by the new point
+    front.put(preference, new Point(preference, rate, copyOf(x)));
+    if (front.size() > capacity)
+      removeMostCrowded();
+    return true;
+  }
+
+  public synchronized int size() {
+    return front.size();
+  }
+
+  public synchronized boolean isEmpty() {
+    return front.isEmpty();
+  }
+
+  // Points of the front in increasing order of average preference value
+  public synchronized List<Point> getFront() {
+    return new ArrayList<Point>(front.values());
+  }
+
+  // A random point of the front, or null if the archive is empty
+  public synchronized Point select(Random r) {
+    if (front.isEmpty())
+      return null;
+    int n = r.nextInt(front.size());
+    for (Point point : front.values()) {
+      if (n-- == 0)
+        return point;
+    }
+    return null;
+  }
+
+  // The point with the highest objective value for weight @p, or null if the archive is empty
+  public synchronized Point best(float p) {
+    Point best = null;
+    for (Point point : front.values()) {
+      if (best == null || point.objectiveValue(p) > best.objectiveValue(p))
+        best = point;
+    }
+    return best;
+  }
+
+  // Print the front, one point per line
+  public synchronized void printFront() {
+    System.out.println("Pareto front: " + front.size() + " points");
+    System.out.println("  preference      rate");
+    for (Point point : front.values())
+      System.out.printf("%12.6f %9.6f%n", point.preference, point.rate);
+  }
+
+  // Drop the interior point with the smallest distance to its two neighbors, in units of the front's extent
+  private void removeMostCrowded() {
+    Point[] points = front.values().toArray(new Point[0]);
+    float prefRange = Math.max(points[points.length - 1].preference - points[0].preference, Float.MIN_NORMAL);
+    float rateRange = Math.max(points[0].rate - points[points.length - 1].rate, Float.MIN_NORMAL);
+    int crowded = -1;
+    float smallest = Float.MAX_VALUE;
+    for (int k = 1; k < points.length - 1; ++k) {
+      float distance = (points[k + 1].preference - points[k - 1].preference) / prefRange
+                     + (points[k - 1].rate - points[k + 1].rate) / rateRange;
+      if (distance < smallest) {
+        smallest = distance;
+        crowded = k;
+      }
+    }
+    if (crowded > 0)
+      front.remove(points[crowded].preference);
+  }
+
+  private static int[][] copyOf(int x[][]) {
+    int[][] result = new int[x.length][];
+    for (int i = 0; i < x.length; ++i)
+      result[i] = x[i].clone();
+    return result;
+  }
+
+  // One non-dominated solution with its two components; the solution must not be modified
+  public static final class Point {
+    public final float preference;   // Average preference value
+    public final float rate;         // Budget execution rate
+    public final int[][] solution;
+
+    Point(float preference, float rate, int[][] solution) {
+      this.preference = preference;
+      this.rate = rate;
+      this.solution = solution;
+    }
+
+    // Objective value for weight @p, as in Utilities.objectiveValue()
+    public float objectiveValue(float p) {
+      return p * preference + (1 - p) * rate;
+    }
+  }
+}
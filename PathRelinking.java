@@ -0,0 +1,250 @@
+// Ana Wu, Pace University, April 2016
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Path relinking over an elite pool
+ * Good local optima of different runs share much of their structure; the solutions between two of them
+ * are more promising than new random starts.
+ *
+ * Process:
+ * 1.Run baseSolver from starts random solutions in parallel, each with its own incumbent, for startShare of
+ *   the time limit. They feed an ElitePool with the local optima they pass through (see RunControl.offerElite());
+ * 2.For every pair of elites not relinked yet, in parallel, walk from the better one to the other one
+ *   flip by flip: each step samples candidatesPerStep of the cells where the two still differ, evaluates their
+ *   flips in O(deptNum) with a SolutionState, and takes the best feasible one (the least penalized one if none
+ *   is feasible). The best feasible solution strictly between the two ends is improved by first-improvement
+ *   flips, then published and offered to the pool;
+ * 3.Repeat step 2 with the new elites, for at most maxRounds rounds, until the deadline or no new pair is left.
+ */
+public class PathRelinking implements Solver {
+
+  // parameters for adjustment
+  private String baseSolver = "sa";       // Solver of the starts, see Solver.create()
+  private int starts = 4;                 // Runs of baseSolver from random solutions
+  private double startShare = 0.5;        // Share of the time limit for the starts
+  private int poolCapacity = 10;          // Elites kept
+  private int minDistance = 3;            // Elites are at least this many flips apart
+  private int candidatesPerStep = 64;     // Flips sampled at each step of a path
+  private int maxRounds = 5;              // Rounds of relinking
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  private RunControl control = new RunControl();    // Deadline, cancellation and live incumbent
+  private SolverConfig config = new SolverConfig(); // Tuning parameters of the base solver
+  private ElitePool pool;                           // Elites of the last run
+  private int paths = 0;                            // Paths walked in the last run
+
+  // Use @control to stop the run early and to publish the best solution while running
+  @Override
+  public void setRunControl(RunControl control) {
+    this.control = control;
+  }
+
+  // Pass @config on to the base solver
+  @Override
+  public void configure(SolverConfig config) {
+    this.config = config;
+  }
+
+  public void setBaseSolver(String name) {
+    baseSolver = name;
+  }
+
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  public ElitePool getElitePool() {
+    return pool;
+  }
+
+  // Fill the elite pool from random starts, then relink pairs of elites; return the best objective value
+  // Return the best solution through bestSolution[][]
+  @Override
+  public float run(int bestSolution[][], Utilities u) {
+    pool = new ElitePool(poolCapacity, minDistance, u);
+    paths = 0;
+    RunControl relinking = new RunControl(control.getIncumbent(), control).setElitePool(pool);
+    long remaining = control.getRemainingMillis();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int k = 0; k < starts; ++k) {
+        Utilities fork = u.fork();              // Own random number generator per thread
+        RunControl start = new RunControl(new Incumbent(), control).setElitePool(pool); // Not from the incumbent
+        if (remaining != Long.MAX_VALUE)
+          start.setTimeLimit((long) (remaining * startShare));
+        Solver solver = Solver.create(baseSolver);
+        solver.configure(config);
+        solver.setRunControl(start);
+        futures.add(executor.submit(() -> {
+          int best[][] = new int[fork.getMaterialNumber()][fork.getDeptNumber()];
+          solver.run(best, fork);
+          if (fork.isFeasible(best))
+            relinking.publish(fork.objectiveValue(best), best);
+        }));
+      }
+      waitFor(futures);
+
+      Set<Long> relinked = new HashSet<Long>();  // Pairs of elite ids
+      for (int round = 0; round < maxRounds && !control.shouldStop(); ++round) {
+        List<ElitePool.Elite> elites = pool.getElites();
+        futures.clear();
+        for (int a = 0; a < elites.size(); ++a) {
+          for (int b = a + 1; b < elites.size(); ++b) {
+            ElitePool.Elite from = elites.get(a);
+            ElitePool.Elite to = elites.get(b);
+            if (!relinked.add((from.id << 32) ^ to.id))
+              continue;
+            Utilities fork = u.fork();
+            futures.add(executor.submit(() -> relink(from, to, fork, relinking)));
+          }
+        }
+        if (futures.isEmpty())
+          break;                                 // No new elites since the last round
+        paths += futures.size();
+        waitFor(futures);
+      }
+    } catch (InterruptedException e) {
+      control.cancel();
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      control.cancel();
+      throw new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdown();
+    }
+    return control.getIncumbent().copyBestSolution(bestSolution);
+  }
+
+  private static void waitFor(List<Future<?>> futures) throws InterruptedException, ExecutionException {
+    for (Future<?> f : futures)
+      f.get();
+  }
+
+  // Walk from elite @from to elite @to, improve the best feasible solution on the way and publish it to @relinking
+  private void relink(ElitePool.Elite from, ElitePool.Elite to, Utilities u, RunControl relinking) {
+    int materialNum = u.getMaterialNumber();
+    int deptNum = u.getDeptNumber();
+    int x[][] = new int[materialNum][deptNum];
+    int guide[][] = new int[materialNum][deptNum];
+    from.copyTo(x);
+    to.copyTo(guide);
+    int cells[] = new int[ElitePool.distance(from, to)];  // Cells where x[][] still differs from guide[][]
+    int remaining = 0;
+    for (int i = 0; i < materialNum; ++i) {
+      for (int j = 0; j < deptNum; ++j) {
+        if (x[i][j] != guide[i][j])
+          cells[remaining++] = i * deptNum + j;
+      }
+    }
+
+    SolutionState state = new SolutionState(u, x);
+    Random r = u.getRandom();
+    int best[][] = new int[materialNum][deptNum];
+    float bestObjValue = -Float.MAX_VALUE;
+    for (; remaining > 1 && !control.shouldStop(); --remaining) {  // The last step would reach guide[][]
+      int sample = Math.min(candidatesPerStep, remaining);
+      int chosen = -1;
+      float chosenObjValue = SolutionState.INFEASIBLE;
+      float chosenPenalty = Float.MAX_VALUE;
+      for (int s = 0; s < sample; ++s) {
+        int k = s + r.nextInt(remaining - s);  // cells[0 .. s] is a random sample of the remaining cells
+        int cell = cells[k];
+        cells[k] = cells[s];
+        cells[s] = cell;
+        Move m = Move.flip(cell / deptNum, cell % deptNum);
+        float objValue = state.evaluate(m);
+        if (objValue != SolutionState.INFEASIBLE) {
+          if (objValue > chosenObjValue) {
+            chosenObjValue = objValue;
+            chosen = s;
+          }
+        }
+        else if (chosenObjValue == SolutionState.INFEASIBLE) {
+          state.apply(m);
+          float penalty = state.penaltyValue();
+          state.undo(m);
+          if (penalty < chosenPenalty) {
+            chosenPenalty = penalty;
+            chosen = s;
+          }
+        }
+      }
+      int cell = cells[chosen];
+      state.apply(Move.flip(cell / deptNum, cell % deptNum));
+      cells[chosen] = cells[remaining - 1];  // Done with this cell
+      if (chosenObjValue > bestObjValue) {
+        bestObjValue = chosenObjValue;
+        u.copyArray(x, best);
+      }
+    }
+    if (bestObjValue == -Float.MAX_VALUE)
+      return;                                // No feasible solution on the way
+
+    state.load(best);
+    improve(state);
+    if (u.isFeasible(best))
+      relinking.publish(u.objectiveValue(best), best);
+  }
+
+  // Apply improving feasible flips to the solution of @state, sweeping all cells until none is left
+  private void improve(SolutionState state) {
+    int x[][] = state.getSolution();
+    float objValue = state.objectiveValue();
+    boolean improved = true;
+    while (improved && !control.shouldStop()) {
+      improved = false;
+      for (int i = 0; i < x.length; ++i) {
+        for (int j = 0; j < x[0].length; ++j) {
+          Move m = Move.flip(i, j);
+          float newObjValue = state.evaluate(m);
+          if (newObjValue != SolutionState.INFEASIBLE && newObjValue > objValue) {
+            state.apply(m);
+            objValue = newObjValue;
+            improved = true;
+          }
+        }
+      }
+    }
+  }
+
+  // Print the elites and the amount of paths walked in the last run
+  public void reportPool() {
+    List<ElitePool.Elite> elites = pool.getElites();
+    System.out.println("Elite pool: " + elites.size() + " solutions, " + paths + " paths relinked");
+    for (ElitePool.Elite e : elites)
+      System.out.println("  objective value = " + e.objValue);
+  }
+
+  public static void main(String args[]) {
+    Utilities u = new Utilities();                    // Create a Utilities object
+    CommandLine cl = new CommandLine(args, "10.txt"); // Default data file name is 10.txt
+    cl.configure(u);                                  // Optional random seed
+    u.readGraph(cl.getFileName());
+
+    int bestSolution[][] = new int[u.getMaterialNumber()][u.getDeptNumber()]; // Allocate space for best solution
+    PathRelinking pr = new PathRelinking();
+    pr.setBaseSolver(cl.getAlgorithm());              // Solver of the starts, sa by default
+    if (cl.getWorkers() > 0)
+      pr.setThreads(cl.getWorkers());                 // Threads, one per processor by default
+    pr.setRunControl(cl.createRunControl(u));         // Optional time limit
+    pr.configure(cl.getConfig());                     // Optional tuned parameters of the base solver
+    u.startRun();                                     // Mark the start of run
+    float bestObjValue = pr.run(bestSolution, u);     // Run the starts, then relink
+    u.endRun();                                       // Mark the end of run
+    cl.closeEvents();                                 // Let --events print the last improvements
+    // Print out results
+    pr.reportPool();
+    u.reportResult("Path relinking", bestObjValue, bestSolution);
+    // Append results in file costs.txt
+    u.appendBestPartition("Path relinking", bestObjValue, bestSolution);
+  }
+}
@@ -0,0 +1,104 @@
+// Ana Wu, Pace University, April 2016
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Algorithm portfolio
+ * Run SA, Tabu Search, DPSO and DPSO with SA at the same time, one thread each.
+ * 
+ * Process:
+ * 1.Give every solver its own Utilities fork and a RunControl that publishes into one shared,
+ *   lock-free Incumbent and stops together with the portfolio control;
+ * 2.Each solver starts from the incumbent if one already exists. When a solver stagnates,
+ *   it restarts from the incumbent if another solver has found something better, and stops otherwise;
+ * 3.The portfolio ends at the deadline, on cancellation, or when every solver has stopped.
+ *   The best solution of all solvers is returned.
+ */
+
+public class Portfolio implements Solver {
+
+  // parameters for adjustment
+  private int[] stagnationLimits = {20, 300, 200, 200}; // Per solver, in its own iteration unit:
+                                                        // SA levels, Tabu moves, DPSO iterations
+
+  private RunControl control = new RunControl();        // Deadline, cancellation and shared incumbent
+  private SolverConfig config = new SolverConfig();     // Tuning parameters of all solvers
+  private String[] names = {"Simulated annealing", "Tabu search", "Particle Swarm Optimization",
+                            "Particle Swarm Optimization with SA"};
+  private float[] results = new float[names.length];    // Best objective value found by each solver
+
+  // Use @control to stop all solvers and to publish the best solution while running
+  @Override
+  public void setRunControl(RunControl control) {
+    this.control = control;
+  }
+
+  // Pass @config on to every solver of the portfolio
+  @Override
+  public void configure(SolverConfig config) {
+    this.config = config;
+  }
+
+  // Run all solvers in parallel and return the best objective value
+  // Return the best solution through bestSolution[][]
+  @Override
+  public float run(int bestSolution[][], Utilities u) {
+    final Solver[] solvers = {new SimulatedAnnealing(), new TabuSearch(), new DiscreteParticleSwarm(),
+                              new DiscreteParticleSwarmWithSA()};
+    ExecutorService pool = Executors.newFixedThreadPool(solvers.length);
+    List<Future<Float>> futures = new ArrayList<Future<Float>>();
+    try {
+      for (int k = 0; k < solvers.length; ++k) {
+        final Solver solver = solvers[k];
+        final Utilities fork = u.fork();                 // Own random number generator per thread
+        final int[][] best = new int[u.getMaterialNumber()][u.getDeptNumber()];
+        RunControl child = new RunControl(control.getIncumbent(), control);
+        child.setStagnationLimit(stagnationLimits[k]).setRestartFromIncumbent(true);
+        solver.setRunControl(child);
+        solver.configure(config);
+        futures.add(pool.submit(() -> solver.run(best, fork)));
+      }
+      for (int k = 0; k < solvers.length; ++k)
+        results[k] = futures.get(k).get();
+    } catch (InterruptedException e) {
+      control.cancel();
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      control.cancel();
+      throw new RuntimeException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+    return control.getIncumbent().copyBestSolution(bestSolution);
+  }
+
+  // Print the best objective value found by each solver
+  public void reportSolvers() {
+    for (int k = 0; k < names.length; ++k)
+      System.out.println(names[k] + ": objective value = " + results[k]);
+  }
+
+  public static void main(String args[]) {
+    Utilities u = new Utilities();                    // Create a Utilities object
+    CommandLine cl = new CommandLine(args, "10.txt"); // Default data file name is 10.txt
+    u.readGraph(cl.getFileName());
+
+    int bestSolution[][] = new int[u.getMaterialNumber()][u.getDeptNumber()]; // Allocate space for best solution
+    Portfolio portfolio = new Portfolio();
+    portfolio.setRunControl(cl.createRunControl(u));  // Optional time limit
+    portfolio.configure(cl.getConfig());              // Optional tuned parameters of all solvers
+    u.startRun();                                     // Mark the start of run
+    float bestObjValue = portfolio.run(bestSolution, u); // Run all algorithms in parallel
+    u.endRun();                                       // Mark the end of run
+    cl.closeEvents();                                 // Let --events print the last improvements
+    // Print out results
+    portfolio.reportSolvers();
+    u.reportResult("Portfolio", bestObjValue, bestSolution);
+    // Append results in file costs.txt
+    u.appendBestPartition("Portfolio", bestObjValue, bestSolution);
+  }
+}
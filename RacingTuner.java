@@ -0,0 +1,294 @@
+// Ana Wu, Pace University, April 2016
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Racing tuner
+ * Find the fastest SolverConfig of one algorithm that reaches a target quality on an instance mix.
+ *
+ * Process:
+ * 1.Target: run the default configuration once per instance for timeLimit milliseconds;
+ *   the target of the instance is to come within tolerance of the objective value it reached;
+ * 2.Candidates: the default configuration and candidateNumber - 1 random ones from the ranges in sample();
+ * 3.Race over blocks, one block per seed and instance, taken seed by seed so the early blocks cover the mix:
+ *   a)Run every surviving candidate on the block, in parallel on a fixed pool. A run stops as soon as it
+ *     reaches the target (RunControl.setGapTolerance()); its cost is the time it took, or 2 * timeLimit
+ *     if it never got there;
+ *   b)From minBlocks blocks on, rank the candidates within each block and apply the Friedman test;
+ *     if the ranks differ significantly, drop every candidate whose rank sum is worse than the best one's
+ *     by more than the Conover post-hoc critical difference (as in F-race);
+ *   c)Stop when one candidate is left or all blocks are done;
+ * 4.Print the survivors by mean cost; the first one is the answer, in the text form of --config.
+ * Costs are wall-clock times, so the pool should not have more threads than there are processors,
+ * and every run starts with an empty fitness cache of its own (Utilities.freshFork()).
+ *
+ * Usage: java RacingTuner [--algorithm sa|tabu|dpso|dpso-sa|async-dpso] [--instances 10.txt,40.txt,...]
+ *                         [--seeds n] [--candidates n] [--tolerance fraction] [--time-limit milliseconds]
+ *                         [--threads n]
+ */
+public class RacingTuner {
+
+  // parameters for adjustment
+  private String algorithm = "sa";
+  private String[] instances = {"10.txt", "40.txt"};
+  private int seeds = 5;                  // Runs per candidate and instance, with seeds 1, 2, ...
+  private int candidateNumber = 16;       // Configurations in the race, the default one included
+  private double tolerance = 0.01;        // Relative distance to the reference objective value that counts as reached
+  private long timeLimit = 5000;          // Time limit of each run in milliseconds
+  private int minBlocks = 5;              // Blocks before the first elimination
+  private double alpha = 0.05;            // Significance level of the tests
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private long sampleSeed = 2016;         // Seed for the random candidates
+
+  private Utilities[] data;               // Instance data, forked for every run
+  private float[] targets;                // Reference objective value of each instance
+
+  // Run the race and print the surviving configurations, best first
+  public void run() throws InterruptedException, ExecutionException {
+    data = new Utilities[instances.length];
+    targets = new float[instances.length];
+    for (int k = 0; k < instances.length; ++k) {
+      data[k] = new Utilities();
+      data[k].readGraph(instances[k]);
+      int solution[][] = new int[data[k].getMaterialNumber()][data[k].getDeptNumber()];
+      Utilities fork = data[k].freshFork();
+      fork.setSeed(0);
+      Solver solver = Solver.create(algorithm);
+      solver.setRunControl(new RunControl().setTimeLimit(timeLimit));
+      targets[k] = solver.run(solution, fork);
+      System.out.printf(Locale.ROOT, "Reference for %s: %.6f%n", instances[k], targets[k]);
+    }
+
+    Random r = new Random(sampleSeed);
+    List<Candidate> alive = new ArrayList<Candidate>();
+    alive.add(new Candidate(new SolverConfig()));
+    while (alive.size() < candidateNumber)
+      alive.add(new Candidate(sample(r)));
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      int blocks = seeds * instances.length;
+      for (int b = 0; b < blocks && alive.size() > 1; ++b) {
+        final int instance = b % instances.length;
+        final long seed = b / instances.length + 1;
+        List<Future<Double>> costs = new ArrayList<Future<Double>>();
+        for (Candidate c : alive)
+          costs.add(pool.submit(() -> cost(c.config, instance, seed)));
+        for (int k = 0; k < alive.size(); ++k)
+          alive.get(k).costs.add(costs.get(k).get());
+        if (b + 1 >= minBlocks) {
+          int before = alive.size();
+          alive = eliminate(alive, b + 1);
+          if (alive.size() < before)
+            System.out.printf("Block %d: %d of %d candidates left%n", b + 1, alive.size(), before);
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    alive.sort((a, b) -> Double.compare(a.meanCost(), b.meanCost()));
+    System.out.printf("%10s %8s  %s%n", "mean_ms", "reached", "configuration");
+    for (Candidate c : alive)
+      System.out.printf(Locale.ROOT, "%10.0f %8s  %s%n", c.meanCost(), c.reached() + "/" + c.costs.size(), c.config);
+    System.out.println("Best configuration: " + alive.get(0).config);
+  }
+
+  // Cost of one run of @config on instance @instance with random seed @seed: milliseconds to the target,
+  // or 2 * timeLimit if the target was not reached
+  private double cost(SolverConfig config, int instance, long seed) {
+    Utilities fork = data[instance].freshFork();  // No fitness values of earlier or concurrent runs
+    fork.setSeed(seed);
+    int solution[][] = new int[fork.getMaterialNumber()][fork.getDeptNumber()];
+    Solver solver = Solver.create(algorithm);
+    solver.configure(config);
+    RunControl control = new RunControl().setTimeLimit(timeLimit).setGapTolerance(tolerance, targets[instance]);
+    solver.setRunControl(control);
+    long start = System.nanoTime();
+    float objValue = solver.run(solution, fork);
+    double millis = (System.nanoTime() - start) / 1e6;
+    return (objValue >= targets[instance] * (1 - tolerance)) ? millis : 2.0 * timeLimit;
+  }
+
+  // A random configuration of the parameters @algorithm uses, others keep their defaults
+  private SolverConfig sample(Random r) {
+    SolverConfig config = new SolverConfig();
+    switch (algorithm) {
+      case "sa":
+        config.setSaInitialTemp(logUniform(r, 5, 100)).setSaIterationTimes((int) logUniform(r, 300, 6000))
+              .setAcceptance(AcceptanceCriterion.NAMES[r.nextInt(AcceptanceCriterion.NAMES.length)]);
+        break;
+      case "tabu":
+        config.setTabuAmount((int) logUniform(r, 5, 120)).setTabuIterationTimes((int) logUniform(r, 200, 5000));
+        break;
+      case "dpso-sa":
+        config.setRefineInitialTemp(logUniform(r, 2, 50)).setRefineIterationTimes((int) logUniform(r, 100, 2000));
+        sampleSwarm(config, r);
+        break;
+      case "dpso":
+      case "async-dpso":
+        sampleSwarm(config, r);
+        break;
+      default:
+        throw new IllegalArgumentException("No tuning parameters for algorithm " + algorithm);
+    }
+    return config;
+  }
+
+  // Random swarm parameters, shared by the three swarm solvers
+  private static void sampleSwarm(SolverConfig config, Random r) {
+    config.setParticleNumber((int) logUniform(r, 10, 120))
+          .setWeight((float) (0.4 + 0.8 * r.nextDouble()))
+          .setC1((float) (0.5 + 2.5 * r.nextDouble()))
+          .setC2((float) (0.5 + 2.5 * r.nextDouble()))
+          .setMaxVelocity((float) (2 + 6 * r.nextDouble()))
+          .setTopologyType(r.nextInt(2));
+  }
+
+  private static double logUniform(Random r, double low, double high) {
+    return low * Math.exp(r.nextDouble() * Math.log(high / low));
+  }
+
+  /*
+   * Friedman test over the first @n blocks, with the Conover post-hoc comparison against the best candidate
+   * (Conover, Practical Nonparametric Statistics, 1999). Within each block the candidates are ranked
+   * by cost, ties sharing the mean rank. Return the candidates that are not significantly worse than the best one
+   */
+  private List<Candidate> eliminate(List<Candidate> alive, int n) {
+    int k = alive.size();
+    double[] rankSums = new double[k];
+    double a = 0;                         // Sum of the squared ranks
+    for (int b = 0; b < n; ++b) {
+      double[] costs = new double[k];
+      for (int c = 0; c < k; ++c)
+        costs[c] = alive.get(c).costs.get(b);
+      double[] ranks = ranks(costs);
+      for (int c = 0; c < k; ++c) {
+        rankSums[c] += ranks[c];
+        a += ranks[c] * ranks[c];
+      }
+    }
+    double c0 = n * k * (k + 1) * (k + 1) / 4.0;
+    if (a - c0 <= 0)
+      return alive;                       // All blocks tied
+    double spread = 0;
+    for (double sum : rankSums)
+      spread += (sum - n * (k + 1) / 2.0) * (sum - n * (k + 1) / 2.0);
+    double t = (k - 1) * spread / (a - c0);
+    if (t <= chiSquareQuantile(1 - alpha, k - 1))
+      return alive;                       // No significant difference yet
+
+    int best = 0;
+    for (int c = 1; c < k; ++c) {
+      if (rankSums[c] < rankSums[best])
+        best = c;
+    }
+    int df = (n - 1) * (k - 1);
+    double criticalDifference = tQuantile(1 - alpha / 2, df)
+        * Math.sqrt(2 * n * (1 - t / (n * (k - 1))) * (a - c0) / df);
+    List<Candidate> survivors = new ArrayList<Candidate>();
+    for (int c = 0; c < k; ++c) {
+      if (rankSums[c] - rankSums[best] <= criticalDifference)
+        survivors.add(alive.get(c));
+    }
+    return survivors;
+  }
+
+  // Ranks 1..n of @values in increasing order, ties sharing their mean rank
+  private static double[] ranks(double values[]) {
+    Integer[] order = new Integer[values.length];
+    for (int i = 0; i < order.length; ++i)
+      order[i] = i;
+    Arrays.sort(order, (x, y) -> Double.compare(values[x], values[y]));
+    double[] ranks = new double[values.length];
+    for (int i = 0; i < order.length; ) {
+      int j = i;
+      while (j + 1 < order.length && values[order[j + 1]] == values[order[i]])
+        ++j;
+      for (int m = i; m <= j; ++m)
+        ranks[order[m]] = (i + j) / 2.0 + 1;
+      i = j + 1;
+    }
+    return ranks;
+  }
+
+  // Quantile of the standard normal distribution at @p, rational approximation with absolute error below 4.5e-4
+  // (Abramowitz and Stegun 26.2.23)
+  private static double normalQuantile(double p) {
+    double q = (p < 0.5) ? p : 1 - p;
+    double w = Math.sqrt(-2 * Math.log(q));
+    double z = w - (2.515517 + 0.802853 * w + 0.010328 * w * w) / (1 + 1.432788 * w + 0.189269 * w * w + 0.001308 * w * w * w);
+    return (p < 0.5) ? -z : z;
+  }
+
+  // Quantile of the chi-square distribution with @df degrees of freedom at @p (Wilson-Hilferty)
+  private static double chiSquareQuantile(double p, int df) {
+    double v = 2.0 / (9 * df);
+    double c = 1 - v + normalQuantile(p) * Math.sqrt(v);
+    return df * c * c * c;
+  }
+
+  // Quantile of Student's t distribution with @df degrees of freedom at @p (Cornish-Fisher expansion)
+  private static double tQuantile(double p, int df) {
+    double z = normalQuantile(p);
+    double z3 = z * z * z;
+    return z + (z3 + z) / (4 * df) + (5 * z3 * z * z + 16 * z3 + 3 * z) / (96.0 * df * df);
+  }
+
+  // A configuration in the race with its cost on every block so far
+  private class Candidate {
+    final SolverConfig config;
+    final List<Double> costs = new ArrayList<Double>();
+
+    Candidate(SolverConfig config) {
+      this.config = config;
+    }
+
+    double meanCost() {
+      double sum = 0;
+      for (double cost : costs)
+        sum += cost;
+      return costs.isEmpty() ? 0 : sum / costs.size();
+    }
+
+    // Amount of runs that reached the target
+    int reached() {
+      int count = 0;
+      for (double cost : costs) {
+        if (cost < 2.0 * timeLimit)
+          ++count;
+      }
+      return count;
+    }
+  }
+
+  public static void main(String args[]) throws InterruptedException, ExecutionException {
+    RacingTuner tuner = new RacingTuner();
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("--algorithm") && i + 1 < args.length)
+        tuner.algorithm = args[++i];
+      else if (args[i].equals("--instances") && i + 1 < args.length)
+        tuner.instances = args[++i].split(",");
+      else if (args[i].equals("--seeds") && i + 1 < args.length)
+        tuner.seeds = Integer.parseInt(args[++i]);
+      else if (args[i].equals("--candidates") && i + 1 < args.length)
+        tuner.candidateNumber = Integer.parseInt(args[++i]);
+      else if (args[i].equals("--tolerance") && i + 1 < args.length)
+        tuner.tolerance = Double.parseDouble(args[++i]);
+      else if (args[i].equals("--time-limit") && i + 1 < args.length)
+        tuner.timeLimit = Long.parseLong(args[++i]);
+      else if (args[i].equals("--threads") && i + 1 < args.length)
+        tuner.threads = Integer.parseInt(args[++i]);
+      else
+        throw new IllegalArgumentException("Unknown option " + args[i]);
+    }
+    tuner.run();
+  }
+}
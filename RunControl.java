@@ -0,0 +1,230 @@
+// Ana Wu, Pace University, April 2016
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * RunControl
+ * Stopping rules shared between a solver and its caller:
+ *   - an optional wall-clock deadline;
+ *   - a cancellation token that any thread may trip;
+ *   - an optional stagnation limit, counted in the solver's own iteration unit
+ *     (temperature levels for SA, moves for Tabu, swarm iterations for DPSO).
+ * Solvers publish every new best solution to the Incumbent held here,
+ * so the caller can read the best-so-far result while the run continues.
+ * Several controls may share one Incumbent and a parent control, as in a Portfolio:
+ * cancelling the parent stops all of them, and a stagnated solver may restart
+ * from the shared incumbent instead of stopping.
+ * A control may also ask the solver to write a Checkpoint every so often, and to resume from it.
+ * Given an upper bound on the objective value (see Utilities.getUpperBound()) and a gap tolerance,
+ * the run also stops once the incumbent is within that relative gap of the bound.
+ * With an ElitePool set here or in the parent, every published solution is offered to it, and solvers
+ * offer the local optima they pass through with offerElite().
+ * With an ImprovementPublisher set here or in the parent, every published solution that replaces the incumbent
+ * is also submitted to it, for subscribers that follow the run as it goes.
+ */
+public class RunControl {
+  private final AtomicBoolean cancelled = new AtomicBoolean(false);
+  private final Incumbent incumbent;
+  private final RunControl parent;               // Cancelling the parent also stops this run, may be null
+  private volatile boolean hasDeadline = false;  // No deadline by default
+  private volatile long deadline;                // Deadline in System.nanoTime() units
+  private volatile int stagnationLimit = 0;      // 0 means never stop for stagnation
+  private volatile boolean restartFromIncumbent = false; // On stagnation, restart from a better incumbent
+  private volatile String checkpointFile = null;  // No checkpoints by default
+  private volatile long checkpointInterval;       // Time between checkpoints in System.nanoTime() units
+  private volatile long lastCheckpoint;           // Time of the last checkpoint
+  private volatile boolean resume = false;        // Start from the checkpoint file if there is one
+  private volatile float upperBound = Float.NaN;  // Bound on the objective value, NaN for none
+  private volatile double gapTolerance = 0;       // Stop once the relative gap to upperBound is this small
+  private volatile ElitePool elitePool = null;    // Good, diverse solutions of the run, null for none
+  private volatile ImprovementPublisher improvements = null; // Stream of new incumbents, null for none
+  private final LongAdder iterations = new LongAdder(); // Iterations done, in the solver's own unit
+
+  // Class constructor, with its own incumbent
+  public RunControl() {
+    this(new Incumbent());
+  }
+
+  // Class constructor, publishing into an existing incumbent
+  public RunControl(Incumbent incumbent) {
+    this(incumbent, null);
+  }
+
+  // Class constructor, publishing into an existing incumbent and stopping with @parent
+  public RunControl(Incumbent incumbent, RunControl parent) {
+    this.incumbent = incumbent;
+    this.parent = parent;
+  }
+
+  // Stop the run @millis milliseconds from now
+  public RunControl setTimeLimit(long millis) {
+    deadline = System.nanoTime() + millis * 1000000L;
+    hasDeadline = true;
+    return this;
+  }
+
+  // Stop the run after @limit iterations without improvement, 0 disables the rule
+  public RunControl setStagnationLimit(int limit) {
+    stagnationLimit = limit;
+    return this;
+  }
+
+  public int getStagnationLimit() {
+    return stagnationLimit;
+  }
+
+  // On stagnation, restart from the incumbent if another solver has published a better one
+  public RunControl setRestartFromIncumbent(boolean restart) {
+    restartFromIncumbent = restart;
+    return this;
+  }
+
+  public boolean isRestartFromIncumbent() {
+    return restartFromIncumbent;
+  }
+
+  // Write a checkpoint to @fileName every @intervalMillis milliseconds
+  public RunControl setCheckpoint(String fileName, long intervalMillis) {
+    checkpointFile = fileName;
+    checkpointInterval = intervalMillis * 1000000L;
+    lastCheckpoint = System.nanoTime();
+    return this;
+  }
+
+  public String getCheckpointFile() {
+    return checkpointFile;
+  }
+
+  // Start from the checkpoint file instead of a new solution
+  public RunControl setResume(boolean resume) {
+    this.resume = resume;
+    return this;
+  }
+
+  public boolean isResume() {
+    return resume;
+  }
+
+  // Return true if a checkpoint should be written now; the interval restarts from now
+  public boolean isCheckpointDue() {
+    if (checkpointFile == null)
+      return false;
+    long now = System.nanoTime();
+    if (now - lastCheckpoint < checkpointInterval)
+      return false;
+    lastCheckpoint = now;
+    return true;
+  }
+
+  // Stop the run once the incumbent is within relative gap @tolerance of @upperBound, e.g. 0.01 for 1%
+  public RunControl setGapTolerance(double tolerance, float upperBound) {
+    this.gapTolerance = tolerance;
+    this.upperBound = upperBound;
+    return this;
+  }
+
+  public float getUpperBound() {
+    return upperBound;
+  }
+
+  // Return true if the incumbent is within the gap tolerance of the upper bound, here or in the parent control
+  public boolean isGapClosed() {
+    float bound = upperBound;
+    if (!Float.isNaN(bound) && incumbent.isPresent()
+        && bound - incumbent.getBestObjValue() <= gapTolerance * Math.abs(bound))
+      return true;
+    return parent != null && parent.isGapClosed();
+  }
+
+  // Keep good, diverse solutions of the run in @pool
+  public RunControl setElitePool(ElitePool pool) {
+    elitePool = pool;
+    return this;
+  }
+
+  // The elite pool of this control or else of the parent, null if there is none
+  public ElitePool getElitePool() {
+    ElitePool pool = elitePool;
+    return (pool != null || parent == null) ? pool : parent.getElitePool();
+  }
+
+  // Offer feasible solution x[][] with objective value @objValue to the elite pool, if there is one
+  public void offerElite(float objValue, int x[][]) {
+    ElitePool pool = getElitePool();
+    if (pool != null)
+      pool.offer(objValue, x);
+  }
+
+  // Submit every new incumbent to @publisher
+  public RunControl setImprovementPublisher(ImprovementPublisher publisher) {
+    improvements = publisher;
+    return this;
+  }
+
+  // The improvement publisher of this control or else of the parent, null if there is none
+  public ImprovementPublisher getImprovementPublisher() {
+    ImprovementPublisher publisher = improvements;
+    return (publisher != null || parent == null) ? publisher : parent.getImprovementPublisher();
+  }
+
+  // Ask the run to stop as soon as possible; safe to call from any thread
+  public void cancel() {
+    cancelled.set(true);
+  }
+
+  public boolean isCancelled() {
+    return cancelled.get() || (parent != null && parent.isCancelled());
+  }
+
+  // Milliseconds left before the deadline, here or in the parent control, or Long.MAX_VALUE if there is none
+  public long getRemainingMillis() {
+    long remaining = hasDeadline ? Math.max(0, (deadline - System.nanoTime()) / 1000000L) : Long.MAX_VALUE;
+    return (parent == null) ? remaining : Math.min(remaining, parent.getRemainingMillis());
+  }
+
+  // Return true if the deadline has passed
+  public boolean isExpired() {
+    return (hasDeadline && System.nanoTime() - deadline >= 0) || (parent != null && parent.isExpired());
+  }
+
+  // Return true if the solver should stop now, because of cancellation, the deadline or a closed gap
+  public boolean shouldStop() {
+    return isCancelled() || isExpired() || isGapClosed();
+  }
+
+  // Return true if @iterationsWithoutImprovement reaches the stagnation limit
+  public boolean isStagnated(int iterationsWithoutImprovement) {
+    int limit = stagnationLimit;
+    return limit > 0 && iterationsWithoutImprovement >= limit;
+  }
+
+  // Count one iteration of the solver: a temperature level for SA, a move for Tabu,
+  // a swarm iteration for DPSO, a particle update for the asynchronous DPSO
+  public void countIteration() {
+    iterations.increment();
+  }
+
+  public long getIterations() {
+    return iterations.sum();
+  }
+
+  public Incumbent getIncumbent() {
+    return incumbent;
+  }
+
+  // Copy the incumbent into x[][] if it beats @objValue and return its objective value
+  // Return -Float.MAX_VALUE and leave x[][] untouched otherwise
+  public float pullIncumbent(int x[][], float objValue) {
+    return incumbent.copyBestSolutionIfBetter(x, objValue);
+  }
+
+  // Publish a new best solution of the run
+  public void publish(float objValue, int x[][]) {
+    if (incumbent.offer(objValue, x)) {
+      ImprovementPublisher publisher = getImprovementPublisher();
+      if (publisher != null)
+        publisher.submit(objValue, x);
+    }
+    offerElite(objValue, x);
+  }
+}
@@ -0,0 +1,64 @@
+// Ana Wu, Pace University, April 2016
+/*
+ * ScalarKernel
+ * Full evaluation in one row-major pass over the solution and the flat preference matrix.
+ * For each material: sum its preference values over the departments that acquire it,
+ * then add its cost shares, ceil(preference * cost / total preference), to the department costs.
+ * The per-department and per-category sums are turned into objective and penalty values by Instance.
+ * Results are identical to the nested loops in Utilities.
+ */
+public class ScalarKernel implements EvaluationKernel {
+  private final Instance instance;
+  private final int materialNum;
+  private final int deptNum;
+  private final float[] prefRow;
+  private final float[] cost;
+  private final int[] belongs;
+  private final float p;
+
+  public ScalarKernel(Instance instance, float p) {
+    this.instance = instance;
+    this.p = p;
+    materialNum = instance.getMaterialNumber();
+    deptNum = instance.getDeptNumber();
+    prefRow = instance.getPrefRow();
+    cost = instance.getCost();
+    belongs = instance.getBelongs();
+  }
+
+  @Override
+  public void evaluate(int x[][], float result[]) {
+    float[] prefByDept = new float[deptNum];   // Sum of preference values by department
+    int[] numByDept = new int[deptNum];        // Amount of materials by department
+    int[] costByDept = new int[deptNum];       // Actual cost by department
+    int[] numByCategory = new int[instance.getCategoryNumber()]; // Amount of acquired materials by category
+
+    for (int i = 0; i < materialNum; ++i) {
+      int[] row = x[i];
+      int base = i * deptNum;
+      float totalPref = 0;
+      boolean acquired = false;
+      for (int j = 0; j < deptNum; ++j) {
+        if (row[j] == 1) {
+          float pref = prefRow[base + j];
+          totalPref += pref;
+          prefByDept[j] += pref;
+          ++numByDept[j];
+          acquired = true;
+        }
+      }
+      if (!acquired)
+        continue;
+      ++numByCategory[belongs[i]];
+      if (totalPref != 0) {
+        float materialCost = cost[i];
+        for (int j = 0; j < deptNum; ++j) {
+          if (row[j] == 1)
+            costByDept[j] += (int) Math.ceil(prefRow[base + j] * materialCost / totalPref);
+        }
+      }
+    }
+    result[0] = instance.objectiveFromSums(prefByDept, numByDept, costByDept, p);
+    result[1] = instance.penaltyFromSums(costByDept, numByCategory);
+  }
+}
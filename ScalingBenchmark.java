@@ -0,0 +1,130 @@
+// Ana Wu, Pace University, April 2016
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Locale;
+
+/*
+ * Scaling benchmark
+ * Run every solver over a sweep of generated instance sizes and print one table row per size and solver:
+ * time, iterations and time per iteration (in the solver's own unit, see RunControl.countIteration()),
+ * evaluations per second (see Utilities.getEvaluations()), peak heap, and the objective value
+ * (mean and best over the runs) with the share of feasible results.
+ * Instances and seeds are fixed, so tables of two versions can be compared with diff,
+ * the time columns aside. Every run starts with an empty fitness cache, so earlier runs do not speed up later ones.
+ *
+ * Usage: java ScalingBenchmark [--sizes 100x10,400x20x10,...] [--solvers sa,tabu,dpso,dpso-sa]
+ *                              [--time-limit milliseconds] [--runs n] [--out fileName]
+ * Solvers may print progress to the console, so use --out for a clean table.
+ * A size is materials x departments [x categories], with materials / 20 categories by default.
+ */
+public class ScalingBenchmark {
+
+  // parameters for adjustment
+  private String[] sizes = {"100x10", "400x20", "1600x40"};
+  private String[] solvers = {"sa", "tabu", "dpso", "dpso-sa"};
+  private long timeLimit = 5000;       // Time limit of each run in milliseconds
+  private int runs = 3;                // Runs per size and solver, with seeds 1, 2, ...
+
+  private static final String HEADER = String.format(Locale.ROOT, "%-12s %-8s %10s %10s %12s %12s %10s %10s %10s %8s",
+      "size", "solver", "time_ms", "iterations", "ms_per_iter", "evals_per_s", "heap_MB", "obj_mean", "obj_best", "feasible");
+
+  // Run the sweep, writing the table to @out
+  public void run(PrintWriter out) throws IOException {
+    out.println(HEADER);
+    out.flush();
+    for (String size : sizes) {
+      String[] dims = size.split("x");
+      int materialNum = Integer.parseInt(dims[0]);
+      int deptNum = Integer.parseInt(dims[1]);
+      int categoryNum = (dims.length > 2) ? Integer.parseInt(dims[2]) : Math.max(1, materialNum / 20);
+      File file = File.createTempFile("instance-" + size + "-", ".txt");
+      file.deleteOnExit();
+      new InstanceGenerator(materialNum, deptNum, categoryNum).write(file.getPath());
+      Utilities u = new Utilities();
+      u.readGraph(file.getPath());
+      for (String name : solvers)
+        out.println(measure(size, name, u));
+      out.flush();
+    }
+  }
+
+  // Run solver @name @runs times on the instance in @u and return its table row
+  private String measure(String size, String name, Utilities u) {
+    long totalNanos = 0;
+    long iterations = 0;
+    long evaluations = 0;
+    long peakHeap = 0;
+    double objSum = 0;
+    float objBest = -Float.MAX_VALUE;
+    int feasible = 0;
+    for (int run = 1; run <= runs; ++run) {
+      Utilities fork = u.freshFork();              // Every run starts with an empty fitness cache
+      fork.setSeed(run);
+      int bestSolution[][] = new int[u.getMaterialNumber()][u.getDeptNumber()];
+      Solver solver = Solver.create(name);
+      RunControl control = new RunControl().setTimeLimit(timeLimit);
+      solver.setRunControl(control);
+      System.gc();
+      resetPeakHeap();
+      u.resetEvaluations();                      // Shared with the fork
+      long start = System.nanoTime();
+      float objValue = solver.run(bestSolution, fork);
+      totalNanos += System.nanoTime() - start;
+      peakHeap = Math.max(peakHeap, getPeakHeap());
+      iterations += control.getIterations();
+      evaluations += u.getEvaluations();
+      objSum += objValue;
+      objBest = Math.max(objBest, objValue);
+      if (u.isFeasible(bestSolution))
+        ++feasible;
+    }
+    double ms = totalNanos / 1e6 / runs;
+    return String.format(Locale.ROOT, "%-12s %-8s %10.0f %10d %12.3f %12.0f %10.1f %10.4f %10.4f %8s",
+        size, name, ms, iterations / runs, (iterations == 0) ? 0 : totalNanos / 1e6 / iterations,
+        evaluations * 1e9 / totalNanos, peakHeap / 1048576.0, objSum / runs, objBest, feasible + "/" + runs);
+  }
+
+  private static void resetPeakHeap() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP)
+        pool.resetPeakUsage();
+    }
+  }
+
+  // Peak heap use in bytes since the last resetPeakHeap()
+  private static long getPeakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP)
+        peak += pool.getPeakUsage().getUsed();
+    }
+    return peak;
+  }
+
+  public static void main(String args[]) throws IOException {
+    ScalingBenchmark benchmark = new ScalingBenchmark();
+    String outFile = null;
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("--sizes") && i + 1 < args.length)
+        benchmark.sizes = args[++i].split(",");
+      else if (args[i].equals("--solvers") && i + 1 < args.length)
+        benchmark.solvers = args[++i].split(",");
+      else if (args[i].equals("--time-limit") && i + 1 < args.length)
+        benchmark.timeLimit = Long.parseLong(args[++i]);
+      else if (args[i].equals("--runs") && i + 1 < args.length)
+        benchmark.runs = Integer.parseInt(args[++i]);
+      else if (args[i].equals("--out") && i + 1 < args.length)
+        outFile = args[++i];
+      else
+        throw new IllegalArgumentException("Unknown option " + args[i]);
+    }
+    PrintWriter out = (outFile == null) ? new PrintWriter(System.out) : new PrintWriter(new FileWriter(outFile));
+    benchmark.run(out);
+    out.close();
+  }
+}
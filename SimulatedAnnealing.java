@@ -1,66 +1,258 @@
 // Ana Wu, Pace University, April 2016
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Random;
 
-public class SimulatedAnnealing {
+public class SimulatedAnnealing implements Solver {
   
   // parameters for adjustment
   private double initialTemp = 30.0;
   private int iterationTimes = 2400;
+  private boolean adaptiveCooling = true;  // Adaptive schedule, or the fixed one: t = 0.95 * t every iterationTimes moves
+  private Neighborhood neighborhood = Neighborhood.FLIP; // Moves from the current solution to a neighbor
+  private double sweepReheatTemp = 3.0;    // Initial temperature of every weight after the first one in sweep()
+  private String acceptance = "metropolis"; // Acceptance criterion, see AcceptanceCriterion
+
+  private RunControl control = new RunControl();   // Deadline, cancellation and live incumbent
+
+  // Use @control to stop the run early and to publish the best solution while running
+  @Override
+  public void setRunControl(RunControl control) {
+    this.control = control;
+  }
+
+  // Take initialTemp, iterationTimes and the acceptance criterion from @config
+  @Override
+  public void configure(SolverConfig config) {
+    initialTemp = config.getSaInitialTemp();
+    iterationTimes = config.getSaIterationTimes();
+    acceptance = config.getAcceptance();
+  }
   
+  // Neighborhoods other than FLIP are evaluated incrementally through a SolutionState
+  public void setNeighborhood(Neighborhood neighborhood) {
+    this.neighborhood = neighborhood;
+  }
+
   // Use simulated annealing to find and return the maximum objective value
   // Return the best partition through bestSolution[][]
   // Utilities object u is shared by all algorithms
+  @Override
   public float run(int bestPartition[][], Utilities u) {
     int materialNumber = u.getMaterialNumber();      // Retrieve amount of materials
     int deptNumber = u.getDeptNumber();              // Retrieve amount of departments 
     Random r = u.getRandom();                        // Retrieve Random object
     int p[][] = new int[materialNumber][deptNumber]; // Allocate space for current solution
-    u.randomFeasibleSolution(p);                     // Generate random initial solution
-    float currObjValue = u.objectiveValue(p);        // Find out its objective value
-    float bestObjValue = currObjValue;               // p[][] is the best partition seen so far
-    u.copyArray(p, bestPartition);                   // Record it
+    AcceptanceCriterion criterion = AcceptanceCriterion.create(acceptance, 80);
+    CoolingSchedule schedule = (adaptiveCooling && criterion.usesTemperature())
+                               ? CoolingSchedule.adaptive(iterationTimes, 80, initialTemp)
+                               : CoolingSchedule.fixed(initialTemp, 0.95, iterationTimes);
+    float currObjValue;
+    float bestObjValue;
+    int levelsWithoutImprovement = 0;          // Temperature levels since the best was last improved
+    Checkpoint.Input in = Checkpoint.resume(control, "SimulatedAnnealing", u);
+    if (in != null) {                          // Continue from the checkpoint
+      try (Checkpoint.Input checkpoint = in) {
+        checkpoint.readSolution(p);
+        checkpoint.readSolution(bestPartition);
+        currObjValue = checkpoint.readFloat();
+        bestObjValue = checkpoint.readFloat();
+        levelsWithoutImprovement = checkpoint.readInt();
+        schedule.readState(checkpoint);
+        u.setRandom(checkpoint.readRandom());
+        r = u.getRandom();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    else {
+      currObjValue = control.pullIncumbent(p, -Float.MAX_VALUE); // Start from the incumbent if there is one
+      if (currObjValue == -Float.MAX_VALUE) {
+        if (!u.randomFeasibleSolution(p))            // Generate random initial solution
+          return Integer.MIN_VALUE;                  // None found, nothing feasible to anneal from
+        currObjValue = u.objectiveValue(p);          // Find out its objective value
+      }
+      bestObjValue = currObjValue;                   // p[][] is the best partition seen so far
+      u.copyArray(p, bestPartition);                 // Record it
+    }
+    ZobristTable zobrist = u.getZobrist();
+    long currHash = zobrist.hash(p);                 // Hash of p[][], updated on every accepted move
+    SolutionState state = null;                      // Sums of p[][], updated on every accepted compound move
+    if (neighborhood != Neighborhood.FLIP) {
+      state = new SolutionState(u, p);
+      if (in == null) {
+        currObjValue = state.objectiveValue();       // Same cost model as the move evaluations
+        bestObjValue = currObjValue;
+      }
+    }
+    publish(bestObjValue, bestPartition, state, u);
    
-    int neighbor[][] = new int[u.getMaterialNumber()][deptNumber]; // Allocate space for a neighbor solution
-    double t = initialTemp;                    // Initial temperature; parameter for adjustment
-    while (t > 0.01) {                  // While not frozen; parameter for adjustment
-      for (int l = 0; l < iterationTimes; l++) {   // 1000 is parameter for adjustment
-        u.copyArray(p, neighbor);
-        u.randomSwap(neighbor);         // neighbor[] is now a neighbor of p[]
-        float newObjValue = u.objectiveValue(neighbor);
-        float delta = newObjValue - currObjValue;
-        // Probability to accept a worser neighbor
-        double acceptProbability = Math.exp(delta * 80/t);
+    if (in == null)
+      schedule.start(p, currObjValue, u);      // Initial temperature
+    criterion.start(currObjValue);
+    while (!schedule.isFrozen() && !control.shouldStop()) {  // While not frozen
+      int moves = schedule.getMovesPerLevel();
+      criterion.startLevel(schedule.getTemperature(), moves);
+      float levelStartObjValue = bestObjValue;
+      for (int l = 0; l < moves && !control.shouldStop(); l++) {
+        long neighborHash = 0;
+        int cell = -1;
+        Move move = null;
+        float newObjValue;
+        if (state == null) {
+          cell = u.randomSwap(p, currHash);           // p[][] is now the neighbor, flipped back if rejected
+          if (cell == -1)
+            continue;                                 // No feasible flip found this time
+          neighborHash = currHash ^ zobrist.key(cell);
+          newObjValue = u.cachedObjectiveValue(p, neighborHash);
+        }
+        else {
+          move = state.randomFeasibleMove(r, neighborhood); // Evaluated with its feasibility in one step
+          if (move == null)
+            continue;                                      // No feasible move found this time
+          newObjValue = move.getObjective();
+        }
         // If the neighbor is better, take it as new current solution
-        // Otherwise take it with probability acceptProbability
-        if ((delta >= 0) || (r.nextDouble() < acceptProbability)) {
+        // Otherwise the criterion decides, e.g. with probability exp(delta * 80 / t)
+        boolean accepted = criterion.accept(currObjValue, newObjValue, r);
+        schedule.recordMove(newObjValue - currObjValue, accepted);
+        if (!accepted) {
+          if (state == null)
+            p[cell / deptNumber][cell % deptNumber] ^= 1;  // Undo the flip
+        }
+        else {
           // Accept the neighbor
-          u.copyArray(neighbor, p);
+          if (state == null)
+            currHash = neighborHash;
+          else
+            state.apply(move);
           currObjValue = newObjValue;
           // If the new solution is the best seen so far, record it
           if (currObjValue > bestObjValue) {  
             bestObjValue = currObjValue;
             u.copyArray(p, bestPartition);
+            publish(bestObjValue, bestPartition, state, u);
+          }
+        }
+      }
+      schedule.endLevel(bestObjValue > levelStartObjValue);  // Reduce temperature
+      control.countIteration();
+      control.offerElite(currObjValue, p);                    // Where the level ended, for the elite pool
+      levelsWithoutImprovement = (bestObjValue > levelStartObjValue) ? 0 : levelsWithoutImprovement + 1;
+      if (control.isStagnated(levelsWithoutImprovement)) {
+        float seeded = control.isRestartFromIncumbent() ? control.pullIncumbent(p, bestObjValue) : -Float.MAX_VALUE;
+        if (seeded == -Float.MAX_VALUE)
+          break;                        // Nothing better to restart from
+        currHash = zobrist.hash(p);
+        if (state != null) {
+          state.load(p);
+          seeded = state.objectiveValue(); // Same cost model as the move evaluations
+        }
+        currObjValue = seeded;          // Restart from the better incumbent
+        bestObjValue = seeded;
+        u.copyArray(p, bestPartition);
+        levelsWithoutImprovement = 0;
+      }
+      if (control.isCheckpointDue())
+        writeCheckpoint(p, bestPartition, currObjValue, bestObjValue, levelsWithoutImprovement, schedule, u);
+    }
+    return (state == null) ? bestObjValue : u.objectiveValue(bestPartition);
+  }
+
+  // Publish the best partition with its objective value; values of a SolutionState come from fixed-point sums,
+  // so with @state the value is computed again by u.objectiveValue(), as every other solver publishes it
+  private void publish(float bestObjValue, int bestPartition[][], SolutionState state, Utilities u) {
+    control.publish((state == null) ? bestObjValue : u.objectiveValue(bestPartition), bestPartition);
+  }
+
+  /*
+   * Multi-objective mode: weighted-sum sweep over @weights weights of the average preference value, from 1 down to 0.
+   * The weights share one SolutionState: each weight anneals with the fixed schedule, starting from the solution
+   * the previous weight ended with, reheated to sweepReheatTemp only. Every accepted solution is feasible and is
+   * offered to @archive, which keeps the trade-off curve between average preference value and budget execution rate.
+   * Return the objective value of the archived solution that is best for the weight of u, through bestPartition[][]
+   */
+  public float sweep(int bestPartition[][], Utilities u, int weights, ParetoArchive archive) {
+    Random r = u.getRandom();
+    int p[][] = new int[u.getMaterialNumber()][u.getDeptNumber()];
+    if (!u.randomFeasibleSolution(p))
+      return Integer.MIN_VALUE;                  // The archive only takes feasible solutions
+    SolutionState state = new SolutionState(u, p);
+    Neighborhood moves = (neighborhood == Neighborhood.FLIP) ? Neighborhood.COMPOUND : neighborhood;
+    archive.offer(state.averagePreference(), state.budgetExecRate(), p);
+    for (int k = 0; k < weights && !control.shouldStop(); ++k) {
+      RunControl step = control;                 // The time left is shared evenly by the remaining weights
+      long remaining = control.getRemainingMillis();
+      if (remaining != Long.MAX_VALUE)
+        step = new RunControl(new Incumbent(), control).setTimeLimit(remaining / (weights - k));
+      float weight = (weights == 1) ? u.getPreferenceWeight() : 1 - (float) k / (weights - 1);
+      state.setPreferenceWeight(weight);
+      float currObjValue = state.objectiveValue();
+      CoolingSchedule schedule = CoolingSchedule.fixed((k == 0) ? initialTemp : sweepReheatTemp, 0.95, iterationTimes);
+      schedule.start(p, currObjValue, u);
+      AcceptanceCriterion criterion = AcceptanceCriterion.create(acceptance, 80);
+      criterion.start(currObjValue);
+      while (!schedule.isFrozen() && !step.shouldStop()) {
+        criterion.startLevel(schedule.getTemperature(), schedule.getMovesPerLevel());
+        for (int l = 0; l < schedule.getMovesPerLevel() && !step.shouldStop(); l++) {
+          Move move = state.randomFeasibleMove(r, moves);
+          if (move == null)
+            continue;
+          if (criterion.accept(currObjValue, move.getObjective(), r)) {
+            state.apply(move);
+            currObjValue = move.getObjective();
+            archive.offer(state.averagePreference(), state.budgetExecRate(), p);
           }
         }
+        schedule.endLevel(false);
+        control.countIteration();
       }
-      t = 0.95*t;   // Reduce temperature
     }
+    ParetoArchive.Point best = archive.best(u.getPreferenceWeight());
+    u.copyArray(best.solution, bestPartition);
+    float bestObjValue = u.objectiveValue(bestPartition);
+    control.publish(bestObjValue, bestPartition);
     return bestObjValue;
   }
 
+  // Write the state at the end of a temperature level to the checkpoint file
+  private void writeCheckpoint(int p[][], int bestPartition[][], float currObjValue, float bestObjValue,
+                               int levelsWithoutImprovement, CoolingSchedule schedule, Utilities u) {
+    Checkpoint.Output out = new Checkpoint.Output("SimulatedAnnealing", u);
+    try {
+      out.writeSolution(p);
+      out.writeSolution(bestPartition);
+      out.writeFloat(currObjValue);
+      out.writeFloat(bestObjValue);
+      out.writeInt(levelsWithoutImprovement);
+      schedule.writeState(out);
+      out.writeRandom(u.getRandom());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    out.commit(control.getCheckpointFile());
+  }
+
   public static void main(String args[]) {
     Utilities u = new Utilities();                    // Create a Utilities object
-    String fileName = "10.txt";                       // Default data file name
-    if (args.length == 1)
-      fileName = args[0];                             // Use command-line file name
-    u.readGraph(fileName);
+    CommandLine cl = new CommandLine(args, "10.txt"); // Default data file name is 10.txt
+    cl.configure(u);                                  // Optional random seed
+    u.readGraph(cl.getFileName());
 
     int bestSolution[][] = new int[u.getMaterialNumber()][u.getDeptNumber()]; // Allocate space for best partition
     SimulatedAnnealing sa = new SimulatedAnnealing();
+    sa.setRunControl(cl.createRunControl(u));         // Optional time limit and stagnation stop
+    sa.configure(cl.getConfig());                     // Optional tuned parameters
+    sa.setNeighborhood(cl.getNeighborhood());
+    ParetoArchive archive = new ParetoArchive(cl.getArchiveCapacity());
     u.startRun();                                     // Mark the start of run
-    float bestObjValue = sa.run(bestSolution, u);     // Run Simulated Annealing
+    float bestObjValue = (cl.getParetoWeights() > 0) // Run Simulated Annealing, or the weighted-sum sweep
+                       ? sa.sweep(bestSolution, u, cl.getParetoWeights(), archive) : sa.run(bestSolution, u);
     u.endRun();                                       // Mark the end of run
+    cl.closeEvents();                                 // Let --events print the last improvements
     // Print out results
+    if (!archive.isEmpty())
+      archive.printFront();
     u.reportResult("Simulated annealing", bestObjValue, bestSolution); 
     // Append results in file costs.txt
     u.appendBestPartition("Simulated annealing", bestObjValue, bestSolution);      
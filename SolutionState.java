@@ -0,0 +1,316 @@
+// Ana Wu, Pace University, April 2016
+/*
+ * SolutionState
+ * A solution together with its per-department sums, per-category counts and constraint violations,
+ * kept up to date move by move: a move only changes the rows of the materials it touches, so it is
+ * evaluated, with its feasibility, in O(deptNum) instead of O(materialNum * deptNum).
+ *
+ * All sums are integers, so applying and undoing a move restores them exactly. Actual costs follow
+ * the cost model of Utilities (float or fixed-point) and the feasibility check agrees with it;
+ * preference values are summed in fixed point, so in the float model the objective value can differ
+ * from objectiveValue() in the last digits.
+ */
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Consumer;
+
+public class SolutionState {
+  public static final float INFEASIBLE = -Float.MAX_VALUE;   // Evaluation of a move leading to an infeasible solution
+  private static final int MAX_ATTEMPTS = 1000;              // Random moves tried to find a feasible one
+
+  private final Utilities u;
+  private final Instance instance;
+  private final boolean fixedPoint;
+  private float p;                          // Weight of the average preference value in the objective value
+  private final int materialNum;
+  private final int deptNum;
+  private final int[] budget;
+  private final int[] belongs;
+  private final int[] categoryUpper;
+  private final int[] categoryLower;
+  private final float[] prefRow;
+  private final float[] cost;
+  private final int[] prefFixed;
+  private final long[] costFixed;
+  private final int[] categoryStart;        // Materials of category k are categoryMaterials[categoryStart[k] ..]
+  private final int[] categoryMaterials;
+
+  private int[][] x;
+  private final long[] prefByDept;          // Scaled sum of preference values by department
+  private final int[] numByDept;            // Amount of materials by department
+  private final long[] costByDept;          // Actual cost by department
+  private final int[] numByCategory;        // Amount of acquired materials by category
+  private int overBudget;                   // Amount of departments over budget
+  private int categoryViolations;           // Amount of categories out of bounds
+
+  public SolutionState(Utilities u, int x[][]) {
+    this.u = u;
+    instance = u.getInstance();
+    fixedPoint = u.isFixedPoint();
+    p = u.getPreferenceWeight();
+    materialNum = instance.getMaterialNumber();
+    deptNum = instance.getDeptNumber();
+    budget = instance.getBudget();
+    belongs = instance.getBelongs();
+    categoryUpper = instance.getCategoryUpper();
+    categoryLower = instance.getCategoryLower();
+    prefRow = instance.getPrefRow();
+    cost = instance.getCost();
+    prefFixed = instance.getPrefFixed();
+    costFixed = instance.getCostFixed();
+
+    int categoryNum = instance.getCategoryNumber();
+    categoryStart = instance.getCategoryStart();
+    categoryMaterials = instance.getCategoryMaterials();
+
+    prefByDept = new long[deptNum];
+    numByDept = new int[deptNum];
+    costByDept = new long[deptNum];
+    numByCategory = new int[categoryNum];
+    load(x);
+  }
+
+  // Rebuild all sums for solution @x, which is then updated in place by apply()
+  public void load(int x[][]) {
+    this.x = x;
+    Arrays.fill(prefByDept, 0);
+    Arrays.fill(numByDept, 0);
+    Arrays.fill(costByDept, 0);
+    Arrays.fill(numByCategory, 0);
+    overBudget = 0;
+    categoryViolations = 0;
+    for (int k = 0; k < numByCategory.length; ++k) {
+      if (isViolated(k))
+        ++categoryViolations;
+    }
+    for (int i = 0; i < materialNum; ++i)
+      updateRow(i, 1);
+  }
+
+  public int[][] getSolution() {
+    return x;
+  }
+
+  public boolean isFeasible() {
+    return overBudget == 0 && categoryViolations == 0;
+  }
+
+  public float objectiveValue() {
+    return instance.objectiveFromFixedSums(prefByDept, numByDept, costByDept, p);
+  }
+
+  // Weight the objective value, and the evaluation of moves, with @p instead of the weight of Utilities
+  public void setPreferenceWeight(float p) {
+    this.p = p;
+  }
+
+  // The two components of the objective value
+  public float averagePreference() {
+    return instance.objectiveFromFixedSums(prefByDept, numByDept, costByDept, 1);
+  }
+
+  public float budgetExecRate() {
+    return instance.objectiveFromFixedSums(prefByDept, numByDept, costByDept, 0);
+  }
+
+  public float penaltyValue() {
+    return instance.penaltyFromFixedSums(costByDept, numByCategory);
+  }
+
+  // Objective value of the solution after move @m, or INFEASIBLE; the solution is left unchanged
+  public float evaluate(Move m) {
+    u.countEvaluations(1);
+    change(m, true);
+    float value = isFeasible() ? objectiveValue() : INFEASIBLE;
+    change(m, false);
+    m.setObjective(value);
+    return value;
+  }
+
+  public void apply(Move m) {
+    change(m, true);
+  }
+
+  public void undo(Move m) {
+    change(m, false);
+  }
+
+  // A random move of neighborhood @n, or null if the drawn move is not possible in the current solution
+  public Move randomMove(Random r, Neighborhood n) {
+    Move.Type type;
+    switch (n) {
+      case REASSIGN: type = Move.Type.REASSIGN; break;
+      case EXCHANGE: type = Move.Type.EXCHANGE; break;
+      case COMPOUND: type = Move.Type.values()[r.nextInt(3)]; break;
+      default: type = Move.Type.FLIP;
+    }
+    int i = r.nextInt(materialNum);
+    int[] row = x[i];
+    if (type == Move.Type.FLIP)
+      return Move.flip(i, r.nextInt(deptNum));
+
+    int acquiredBy = 0;
+    for (int j = 0; j < deptNum; ++j)
+      acquiredBy += row[j];
+    if (acquiredBy == 0)
+      return null;
+    if (type == Move.Type.EXCHANGE) {
+      int k = belongs[i];
+      int in = categoryMaterials[categoryStart[k] + r.nextInt(instance.getCategorySize(k))];
+      return isAcquired(in) ? null : Move.exchange(i, in);
+    }
+    if (acquiredBy == deptNum)
+      return null;
+    int from = nthDept(row, 1, r.nextInt(acquiredBy));
+    int to = nthDept(row, 0, r.nextInt(deptNum - acquiredBy));
+    return Move.reassign(i, from, to);
+  }
+
+  // A random feasible move of neighborhood @n, already evaluated, or null if none is found
+  public Move randomFeasibleMove(Random r, Neighborhood n) {
+    for (int attempt = 0; attempt < MAX_ATTEMPTS; ++attempt) {
+      Move m = randomMove(r, n);
+      if (m != null && evaluate(m) != INFEASIBLE)
+        return m;
+    }
+    return null;
+  }
+
+  // Pass every possible move of neighborhood @n in the current solution to @action
+  public void forEachMove(Neighborhood n, Consumer<Move> action) {
+    for (int i = 0; i < materialNum; ++i) {
+      int[] row = x[i];
+      if (n == Neighborhood.FLIP || n == Neighborhood.COMPOUND) {
+        for (int j = 0; j < deptNum; ++j)
+          action.accept(Move.flip(i, j));
+      }
+      if (!isAcquired(i))
+        continue;
+      if (n == Neighborhood.REASSIGN || n == Neighborhood.COMPOUND) {
+        for (int from = 0; from < deptNum; ++from) {
+          if (row[from] == 0)
+            continue;
+          for (int to = 0; to < deptNum; ++to) {
+            if (row[to] == 0)
+              action.accept(Move.reassign(i, from, to));
+          }
+        }
+      }
+      if (n == Neighborhood.EXCHANGE || n == Neighborhood.COMPOUND) {
+        for (int c = categoryStart[belongs[i]]; c < categoryStart[belongs[i] + 1]; ++c) {
+          int in = categoryMaterials[c];
+          if (!isAcquired(in))
+            action.accept(Move.exchange(i, in));
+        }
+      }
+    }
+  }
+
+  private boolean isAcquired(int i) {
+    int[] row = x[i];
+    for (int j = 0; j < deptNum; ++j) {
+      if (row[j] == 1)
+        return true;
+    }
+    return false;
+  }
+
+  // Index of the @n-th department with entry @value in @row
+  private int nthDept(int row[], int value, int n) {
+    for (int j = 0; j < deptNum; ++j) {
+      if (row[j] == value && n-- == 0)
+        return j;
+    }
+    return -1;
+  }
+
+  // Apply (@forward) or undo move @m
+  private void change(Move m, boolean forward) {
+    int i = m.getMaterial();
+    switch (m.getType()) {
+      case FLIP:
+        updateRow(i, -1);
+        x[i][m.getDept()] ^= 1;
+        updateRow(i, 1);
+        break;
+      case REASSIGN:
+        updateRow(i, -1);
+        x[i][m.getDept()] = forward ? 0 : 1;
+        x[i][m.getOther()] = forward ? 1 : 0;
+        updateRow(i, 1);
+        break;
+      case EXCHANGE:
+        int from = forward ? i : m.getOther();
+        int to = forward ? m.getOther() : i;
+        updateRow(from, -1);
+        updateRow(to, -1);
+        int[] tmp = x[to];
+        System.arraycopy(x[from], 0, tmp, 0, deptNum);
+        Arrays.fill(x[from], 0);
+        updateRow(from, 1);
+        updateRow(to, 1);
+        break;
+    }
+  }
+
+  // Add (@sign = 1) or remove (@sign = -1) the contribution of row @i to all sums
+  private void updateRow(int i, int sign) {
+    int[] row = x[i];
+    int base = i * deptNum;
+    long totalPrefFixed = 0;
+    float totalPref = 0;
+    boolean acquired = false;
+    for (int j = 0; j < deptNum; ++j) {
+      if (row[j] == 1) {
+        totalPrefFixed += prefFixed[base + j];
+        totalPref += prefRow[base + j];
+        prefByDept[j] += sign * prefFixed[base + j];
+        numByDept[j] += sign;
+        acquired = true;
+      }
+    }
+    if (!acquired)
+      return;
+    changeCategory(belongs[i], sign);
+
+    if (fixedPoint) {
+      if (totalPrefFixed == 0)
+        return;
+      long divisor = Instance.shareDivisor(totalPrefFixed);
+      double reciprocal = 1.0 / divisor;
+      for (int j = 0; j < deptNum; ++j) {
+        if (row[j] == 1)
+          changeCost(j, sign * Instance.fixedShare(prefFixed[base + j], costFixed[i], divisor, reciprocal));
+      }
+    }
+    else {
+      if (totalPref == 0)
+        return;
+      float materialCost = cost[i];
+      for (int j = 0; j < deptNum; ++j) {
+        if (row[j] == 1)
+          changeCost(j, sign * (int) Math.ceil(prefRow[base + j] * materialCost / totalPref));
+      }
+    }
+  }
+
+  private void changeCost(int j, long delta) {
+    boolean wasOver = costByDept[j] > budget[j];
+    costByDept[j] += delta;
+    boolean isOver = costByDept[j] > budget[j];
+    if (wasOver != isOver)
+      overBudget += isOver ? 1 : -1;
+  }
+
+  private void changeCategory(int k, int delta) {
+    boolean wasViolated = isViolated(k);
+    numByCategory[k] += delta;
+    boolean violated = isViolated(k);
+    if (wasViolated != violated)
+      categoryViolations += violated ? 1 : -1;
+  }
+
+  private boolean isViolated(int k) {
+    return numByCategory[k] > categoryUpper[k] || numByCategory[k] < categoryLower[k];
+  }
+}
@@ -0,0 +1,67 @@
+// Ana Wu, Pace University, April 2016
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * SolutionStore
+ * Keep a solution next to its instance file, in <instance file>.sol:
+ *   int magic, int materialNum, int deptNum, float objective value,
+ *   then each row of the solution as a bit set in (deptNum + 63) / 64 longs
+ */
+public class SolutionStore {
+  private static final int MAGIC = 0x4C4D5331;   // "LMS1"
+
+  // File name of the solution stored for instance file @instanceFileName
+  public static String fileNameFor(String instanceFileName) {
+    return instanceFileName + ".sol";
+  }
+
+  // Write solution x[][] with objective value @objValue to @fileName
+  public static void save(String fileName, float objValue, int x[][]) throws IOException {
+    int deptNum = x[0].length;
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(x.length);
+      out.writeInt(deptNum);
+      out.writeFloat(objValue);
+      for (int[] row : x) {
+        for (int base = 0; base < deptNum; base += 64) {
+          long bits = 0;
+          for (int j = base; j < Math.min(base + 64, deptNum); ++j)
+            bits |= (long) row[j] << (j - base);
+          out.writeLong(bits);
+        }
+      }
+    }
+  }
+
+  // Read the solution in @fileName into x[][] and return its stored objective value
+  // Materials and departments beyond the size of x[][] are dropped, missing ones are left 0
+  public static float load(String fileName, int x[][]) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+      if (in.readInt() != MAGIC)
+        throw new IOException(fileName + " is not a stored solution");
+      int materialNum = in.readInt();
+      int deptNum = in.readInt();
+      float objValue = in.readFloat();
+      for (int[] row : x)
+        Arrays.fill(row, 0);
+      for (int i = 0; i < materialNum; ++i) {
+        for (int base = 0; base < deptNum; base += 64) {
+          long bits = in.readLong();
+          if (i >= x.length)
+            continue;
+          for (int j = base; j < Math.min(base + 64, Math.min(deptNum, x[i].length)); ++j)
+            x[i][j] = (int) (bits >>> (j - base)) & 1;
+        }
+      }
+      return objValue;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+// Ana Wu, Pace University, April 2016
+/*
+ *  Common entry point of all algorithms for the library material acquisition problem
+ */
+
+public interface Solver {
+  // Find and return the maximum objective value
+  // Return the best solution through bestSolution[][]
+  // Utilities object u holds the problem instance
+  public float run(int bestSolution[][], Utilities u);
+
+  // Use @control to stop the run early and to publish the best solution while running
+  public void setRunControl(RunControl control);
+
+  // Take the tuning parameters of this solver from @config; solvers without any ignore it
+  public default void configure(SolverConfig config) {
+  }
+
+  // Create the solver named @name:
+  //   sa, tabu, dpso, dpso-sa, async-dpso, portfolio, decomposition, cluster, path-relinking
+  // Throw IllegalArgumentException for any other name
+  public static Solver create(String name) {
+    switch (name) {
+      case "sa": return new SimulatedAnnealing();
+      case "tabu": return new TabuSearch();
+      case "dpso": return new DiscreteParticleSwarm();
+      case "dpso-sa": return new DiscreteParticleSwarmWithSA();
+      case "async-dpso": return new AsyncDiscreteParticleSwarm();
+      case "portfolio": return new Portfolio();
+      case "decomposition": return new DecompositionSolver();
+      case "cluster": return new ClusterCoordinator();
+      case "path-relinking": return new PathRelinking();
+      default: throw new IllegalArgumentException("Unknown algorithm " + name);
+    }
+  }
+}
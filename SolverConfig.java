@@ -0,0 +1,199 @@
+// Ana Wu, Pace University, April 2016
+import java.util.Locale;
+
+/*
+ * SolverConfig
+ * Typed values of the tuning parameters of the solvers, passed to Solver.configure().
+ * A new configuration holds the values the solvers were hand-tuned with; each solver reads
+ * only its own parameters:
+ *   SimulatedAnnealing          saInitialTemp, saIterationTimes, acceptance
+ *   TabuSearch                  tabuAmount, tabuIterationTimes
+ *   the three swarm solvers     particleNumber, weight, c1, c2, maxVelocity, topologyType
+ *   SA refinement of dpso-sa    refineInitialTemp, refineIterationTimes, acceptance
+ * acceptance names an AcceptanceCriterion: metropolis, threshold, deluge or late.
+ * The text form is a comma-separated list of name=value pairs, as printed by toString(),
+ * e.g. "saInitialTemp=20,saIterationTimes=3000"; parse() starts from the defaults.
+ */
+public class SolverConfig {
+  private double saInitialTemp = 30.0;
+  private int saIterationTimes = 2400;
+  private int tabuAmount = 30;
+  private int tabuIterationTimes = 1200;
+  private int particleNumber = 50;
+  private float weight = 1.0f;
+  private float c1 = 2.0f;
+  private float c2 = 2.0f;
+  private float maxVelocity = 6.0f;
+  private int topologyType = 0;           // 0:Global topology. 1:Ring topology.
+  private double refineInitialTemp = 10.0;
+  private int refineIterationTimes = 500;
+  private String acceptance = "metropolis";
+
+  // Parse the text form @text, see above; throw IllegalArgumentException for an unknown name or a bad value
+  public static SolverConfig parse(String text) {
+    SolverConfig config = new SolverConfig();
+    for (String pair : text.split(",")) {
+      if (pair.trim().isEmpty())
+        continue;
+      int eq = pair.indexOf('=');
+      if (eq < 0)
+        throw new IllegalArgumentException("Expected name=value in " + pair);
+      config.set(pair.substring(0, eq).trim(), pair.substring(eq + 1).trim());
+    }
+    return config;
+  }
+
+  // Set the parameter named @name from its text value @value
+  public SolverConfig set(String name, String value) {
+    switch (name) {
+      case "saInitialTemp": return setSaInitialTemp(Double.parseDouble(value));
+      case "saIterationTimes": return setSaIterationTimes(Integer.parseInt(value));
+      case "tabuAmount": return setTabuAmount(Integer.parseInt(value));
+      case "tabuIterationTimes": return setTabuIterationTimes(Integer.parseInt(value));
+      case "particleNumber": return setParticleNumber(Integer.parseInt(value));
+      case "weight": return setWeight(Float.parseFloat(value));
+      case "c1": return setC1(Float.parseFloat(value));
+      case "c2": return setC2(Float.parseFloat(value));
+      case "maxVelocity": return setMaxVelocity(Float.parseFloat(value));
+      case "topologyType": return setTopologyType(Integer.parseInt(value));
+      case "refineInitialTemp": return setRefineInitialTemp(Double.parseDouble(value));
+      case "refineIterationTimes": return setRefineIterationTimes(Integer.parseInt(value));
+      case "acceptance": return setAcceptance(value);
+      default: throw new IllegalArgumentException("Unknown parameter " + name);
+    }
+  }
+
+  // A copy to be changed without affecting this configuration
+  public SolverConfig copy() {
+    return parse(toString());
+  }
+
+  public SolverConfig setSaInitialTemp(double saInitialTemp) {
+    this.saInitialTemp = saInitialTemp;
+    return this;
+  }
+
+  public SolverConfig setSaIterationTimes(int saIterationTimes) {
+    this.saIterationTimes = saIterationTimes;
+    return this;
+  }
+
+  public SolverConfig setTabuAmount(int tabuAmount) {
+    this.tabuAmount = tabuAmount;
+    return this;
+  }
+
+  public SolverConfig setTabuIterationTimes(int tabuIterationTimes) {
+    this.tabuIterationTimes = tabuIterationTimes;
+    return this;
+  }
+
+  public SolverConfig setParticleNumber(int particleNumber) {
+    this.particleNumber = particleNumber;
+    return this;
+  }
+
+  public SolverConfig setWeight(float weight) {
+    this.weight = weight;
+    return this;
+  }
+
+  public SolverConfig setC1(float c1) {
+    this.c1 = c1;
+    return this;
+  }
+
+  public SolverConfig setC2(float c2) {
+    this.c2 = c2;
+    return this;
+  }
+
+  public SolverConfig setMaxVelocity(float maxVelocity) {
+    this.maxVelocity = maxVelocity;
+    return this;
+  }
+
+  public SolverConfig setTopologyType(int topologyType) {
+    this.topologyType = topologyType;
+    return this;
+  }
+
+  public SolverConfig setRefineInitialTemp(double refineInitialTemp) {
+    this.refineInitialTemp = refineInitialTemp;
+    return this;
+  }
+
+  public SolverConfig setRefineIterationTimes(int refineIterationTimes) {
+    this.refineIterationTimes = refineIterationTimes;
+    return this;
+  }
+
+  // Throw IllegalArgumentException for a name AcceptanceCriterion.create() does not know
+  public SolverConfig setAcceptance(String acceptance) {
+    AcceptanceCriterion.create(acceptance, 1);
+    this.acceptance = acceptance;
+    return this;
+  }
+
+  public double getSaInitialTemp() {
+    return saInitialTemp;
+  }
+
+  public int getSaIterationTimes() {
+    return saIterationTimes;
+  }
+
+  public int getTabuAmount() {
+    return tabuAmount;
+  }
+
+  public int getTabuIterationTimes() {
+    return tabuIterationTimes;
+  }
+
+  public int getParticleNumber() {
+    return particleNumber;
+  }
+
+  public float getWeight() {
+    return weight;
+  }
+
+  public float getC1() {
+    return c1;
+  }
+
+  public float getC2() {
+    return c2;
+  }
+
+  public float getMaxVelocity() {
+    return maxVelocity;
+  }
+
+  public int getTopologyType() {
+    return topologyType;
+  }
+
+  public double getRefineInitialTemp() {
+    return refineInitialTemp;
+  }
+
+  public int getRefineIterationTimes() {
+    return refineIterationTimes;
+  }
+
+  public String getAcceptance() {
+    return acceptance;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT, "saInitialTemp=%s,saIterationTimes=%d,tabuAmount=%d,tabuIterationTimes=%d,"
+                         + "particleNumber=%d,weight=%s,c1=%s,c2=%s,maxVelocity=%s,topologyType=%d,"
+                         + "refineInitialTemp=%s,refineIterationTimes=%d,acceptance=%s",
+                         saInitialTemp, saIterationTimes, tabuAmount, tabuIterationTimes,
+                         particleNumber, weight, c1, c2, maxVelocity, topologyType,
+                         refineInitialTemp, refineIterationTimes, acceptance);
+  }
+}
@@ -0,0 +1,225 @@
+// Ana Wu, Pace University, April 2016
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Solver service
+ * A long-lived process answering solve requests over local HTTP, so instances are parsed once
+ * and the solvers run as warm, compiled code:
+ *   GET /solve?file=40.txt&algorithm=sa&timeLimit=500&gap=0.01
+ * algorithm is a name for Solver.create() (default sa), timeLimit is in milliseconds (defaultTimeLimit when
+ * missing or 0, at most maxTimeLimit, so no request keeps a solver thread forever),
+ * gap stops the solver within that relative gap of the upper bound of the instance (default none).
+ * The answer is a JSON object with the objective value, its gap (null when no feasible solution was found)
+ * and the time spent loading, queueing and solving.
+ * A file that cannot be parsed is answered with 400 and not cached; any other failure with 500.
+ *
+ * Process:
+ * 1.Each request is handled on its own virtual thread where the JVM has them (Java 21 and later),
+ *   on a cached platform thread otherwise;
+ * 2.The instance comes from an LRU cache keyed by file name and modification time,
+ *   so a file changed on disk is parsed again; a file is parsed by the first request for it,
+ *   later requests for the same file wait for that parse and requests for other files do not;
+ * 3.The solve itself runs on a fixed pool with one platform thread per processor, on a fork of the
+ *   cached Utilities; the request thread just waits for it.
+ *
+ * Usage: java SolverService [port]
+ */
+public class SolverService {
+
+  // parameters for adjustment
+  private int cacheSize = 16;                                           // Instances kept parsed
+  private int solverThreads = Runtime.getRuntime().availableProcessors(); // Solves running at the same time
+  private long defaultTimeLimit = 10000;                                // Milliseconds, when a request gives none
+  private long maxTimeLimit = 60000;                                    // Milliseconds, longer requests are cut
+
+  private final HttpServer server;
+  private final ExecutorService requestExecutor;
+  private final ExecutorService solverPool;
+  private final Map<String, CompletableFuture<Utilities>> instances = new ConcurrentHashMap<String, CompletableFuture<Utilities>>();
+  private final Map<String, Boolean> recentlyUsed;                      // Keys of instances, least recently used first
+
+  // Create a service listening on local port @port
+  public SolverService(int port) throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+    requestExecutor = newRequestExecutor();
+    solverPool = Executors.newFixedThreadPool(solverThreads);
+    recentlyUsed = new LinkedHashMap<String, Boolean>(cacheSize, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+        if (size() <= cacheSize)
+          return false;
+        instances.remove(eldest.getKey());
+        return true;
+      }
+    };
+    server.createContext("/solve", this::solve);
+    server.setExecutor(requestExecutor);
+  }
+
+  // A virtual thread per task if the JVM supports it, a cached platform thread pool otherwise
+  private static ExecutorService newRequestExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  public void stop() {
+    server.stop(0);
+    solverPool.shutdownNow();
+    requestExecutor.shutdownNow();
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  // Handle GET /solve
+  private void solve(HttpExchange exchange) throws IOException {
+    long startTime = System.nanoTime();
+    try {
+      Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+      String fileName = query.get("file");
+      if (fileName == null || !new File(fileName).isFile()) {
+        respond(exchange, 404, "{\"error\":\"no such instance file\"}");
+        return;
+      }
+      String algorithm = query.getOrDefault("algorithm", "sa");
+      Solver solver = Solver.create(algorithm);
+      long timeLimit = Long.parseLong(query.getOrDefault("timeLimit", "0"));
+      if (timeLimit < 0)
+        throw new IllegalArgumentException("negative timeLimit " + timeLimit);
+      timeLimit = Math.min((timeLimit == 0) ? defaultTimeLimit : timeLimit, maxTimeLimit);
+      double gapTolerance = Double.parseDouble(query.getOrDefault("gap", "-1"));
+
+      boolean[] cached = new boolean[1];
+      Utilities u = getInstance(fileName, cached).fork();  // Own random number generator per request
+      long loadedTime = System.nanoTime();
+      RunControl control = new RunControl().setTimeLimit(timeLimit);
+      if (gapTolerance >= 0)
+        control.setGapTolerance(gapTolerance, u.getUpperBound());
+      solver.setRunControl(control);
+      int bestSolution[][] = new int[u.getMaterialNumber()][u.getDeptNumber()];
+      long[] solveStart = new long[1];
+      Future<Float> result = solverPool.submit(() -> {
+        solveStart[0] = System.nanoTime();
+        return solver.run(bestSolution, u);
+      });
+      float bestObjValue;
+      try {
+        bestObjValue = result.get();
+      } catch (InterruptedException e) {
+        control.cancel();
+        Thread.currentThread().interrupt();
+        respond(exchange, 503, "{\"error\":\"interrupted\"}");
+        return;
+      }
+      long endTime = System.nanoTime();
+      boolean feasible = u.isFeasible(bestSolution);   // No gap for a solver's "nothing found" value
+      respond(exchange, 200, String.format(Locale.ROOT,
+          "{\"file\":\"%s\",\"algorithm\":\"%s\",\"objective\":%s,\"gap\":%s,\"feasible\":%b,\"cached\":%b,"
+          + "\"loadMillis\":%.3f,\"queueMillis\":%.3f,\"solveMillis\":%.3f,\"totalMillis\":%.3f}",
+          escape(fileName), escape(algorithm), Float.toString(bestObjValue),
+          feasible ? String.format(Locale.ROOT, "%.6f", u.getOptimalityGap(bestObjValue)) : "null", feasible, cached[0],
+          (loadedTime - startTime) / 1e6, (solveStart[0] - loadedTime) / 1e6,
+          (endTime - solveStart[0]) / 1e6, (endTime - startTime) / 1e6));
+    } catch (IllegalArgumentException e) {
+      respond(exchange, 400, "{\"error\":\"" + escape(e.getMessage()) + "\"}");
+    } catch (ExecutionException e) {
+      respond(exchange, 500, "{\"error\":\"" + escape(String.valueOf(e.getCause())) + "\"}");
+    } catch (RuntimeException e) {
+      respond(exchange, 500, "{\"error\":\"" + escape(String.valueOf(e)) + "\"}");
+    }
+  }
+
+  // The parsed instance of @fileName, read again if the file changed; @cached[0] tells if it was cached
+  // or being parsed by another request, which this one then waits for
+  // Throw IllegalArgumentException if the file cannot be parsed
+  private Utilities getInstance(String fileName, boolean[] cached) throws IOException {
+    File file = new File(fileName);
+    String key = file.getCanonicalPath() + "@" + file.lastModified();
+    CompletableFuture<Utilities> created = new CompletableFuture<Utilities>();
+    CompletableFuture<Utilities> entry = instances.computeIfAbsent(key, k -> created);
+    cached[0] = (entry != created);
+    if (entry == created) {                   // Parse outside of any lock
+      try {
+        Utilities u = new Utilities();
+        u.readGraph(fileName);
+        if (u.getInstance() == null)          // readGraph() only prints parse errors
+          throw new IllegalArgumentException("cannot parse instance file " + fileName);
+        u.getUpperBound();                    // Computed once, shared by the forks of later requests
+        created.complete(u);
+      } catch (RuntimeException e) {
+        instances.remove(key, created);       // Not cached, a later request tries again
+        created.completeExceptionally(e);
+        throw e;
+      }
+    }
+    Utilities u;
+    try {
+      u = entry.join();
+    } catch (CompletionException e) {
+      throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : e;
+    }
+    synchronized (recentlyUsed) {
+      recentlyUsed.put(key, Boolean.TRUE);    // May evict the least recently used instance
+    }
+    return u;
+  }
+
+  private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+    Map<String, String> result = new HashMap<String, String>();
+    if (rawQuery == null)
+      return result;
+    for (String pair : rawQuery.split("&")) {
+      int eq = pair.indexOf('=');
+      if (eq > 0)
+        result.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+    }
+    return result;
+  }
+
+  private static String escape(String s) {
+    return s.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  public static void main(String args[]) throws IOException {
+    int port = (args.length > 0) ? Integer.parseInt(args[0]) : 8080;
+    SolverService service = new SolverService(port);
+    service.start();
+    System.out.println("Solver service listening on http://localhost:" + service.getPort() + "/solve");
+  }
+}
@@ -1,19 +1,46 @@
 // Ana Wu, Pace University, April 2016
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 // A simplified Tabu Search algorithm implementation for library problem acquisition problem
-public class TabuSearch {
+public class TabuSearch implements Solver {
   
   // parameters for adjustment
   private int tabuAmount = 30;
   private int iterationTimes = 1200;
+  private Neighborhood neighborhood = Neighborhood.FLIP; // Moves from the current solution to a neighbor
 
   private Utilities u;                        // Utilities object 
   private int neighbor[][];                   // Generic array for a neighbor of p[]
   int materialNum;                            // Retrieve amount of materials
   int deptNum;                                // Retrieve amount of departments 
+  private RunControl control = new RunControl(); // Deadline, cancellation and live incumbent
+  private Move bestMove;                      // Best move found by bestQualifiedMove()
+
+  // Use @control to stop the run early and to publish the best solution while running
+  @Override
+  public void setRunControl(RunControl control) {
+    this.control = control;
+  }
+
+  // Take tabuAmount and iterationTimes from @config
+  @Override
+  public void configure(SolverConfig config) {
+    tabuAmount = config.getTabuAmount();
+    iterationTimes = config.getTabuIterationTimes();
+  }
   
+  // Neighborhoods other than FLIP are evaluated incrementally through a SolutionState
+  public void setNeighborhood(Neighborhood neighborhood) {
+    this.neighborhood = neighborhood;
+  }
+
   // Use tabu search to find and return the maximum objective value
   // Return the best partition through bestSolution[][]
   // Utilities object u is shared by all algorithms
+  @Override
   public float run(int bestPartition[][], Utilities u) {
     this.u = u;                                     // Retrieve Random object
     materialNum = u.getMaterialNumber();            // Retrieve amount of materials
@@ -21,26 +48,110 @@ public class TabuSearch {
     int p[][] = new int[materialNum][deptNum];      // Allocate space for current solution
     neighbor = new int[materialNum][deptNum];        // Allocate space for a neighbor of p[]
 
-    u.randomFeasibleSolution(p);                     // Generate random initial solution
-    float currObjValue = u.objectiveValue(p);        // Find out its cost
-    float bestObjValue = currObjValue;               // p[] is the best solution seen so far
-    u.copyArray(p, bestPartition);                   // Record it
     // Create a tabu list recording the most recently moved 10 entries
     // 10 is a parameter for adjustment
     TabuList t = new TabuList(tabuAmount);
     // Stop if there are no improvement for 50 consecutive iterations
     // 50 is a parameter for adjustment
-    for (int i = 0; i < iterationTimes; i++) {
-      currObjValue = bestQualifiedNeighbor(p, t, currObjValue);
+    int iterationsWithoutImprovement = 0;
+    int firstIteration = 0;
+    float currObjValue;
+    float bestObjValue;
+    Checkpoint.Input in = Checkpoint.resume(control, "TabuSearch", u);
+    if (in != null) {                                // Continue from the checkpoint
+      try (Checkpoint.Input checkpoint = in) {
+        checkpoint.readSolution(p);
+        checkpoint.readSolution(bestPartition);
+        currObjValue = checkpoint.readFloat();
+        bestObjValue = checkpoint.readFloat();
+        firstIteration = checkpoint.readInt();
+        iterationsWithoutImprovement = checkpoint.readInt();
+        t.readState(checkpoint);
+        u.setRandom(checkpoint.readRandom());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    else {
+      currObjValue = control.pullIncumbent(p, -Float.MAX_VALUE); // Start from the incumbent if there is one
+      if (currObjValue == -Float.MAX_VALUE) {
+        if (!u.randomFeasibleSolution(p))            // Generate random initial solution
+          return Integer.MIN_VALUE;                  // None found, nothing feasible to search from
+        currObjValue = u.objectiveValue(p);          // Find out its cost
+      }
+      bestObjValue = currObjValue;                   // p[] is the best solution seen so far
+      u.copyArray(p, bestPartition);                 // Record it
+    }
+    SolutionState state = null;                      // Sums of p[][], updated on every compound move
+    if (neighborhood != Neighborhood.FLIP) {
+      state = new SolutionState(u, p);
+      if (in == null)
+        bestObjValue = currObjValue = state.objectiveValue(); // Same cost model as the move evaluations
+    }
+    publish(bestObjValue, bestPartition, state);
+    boolean offered = false;                         // p[][] was offered to the elite pool since it last moved
+    for (int i = firstIteration; i < iterationTimes && !control.shouldStop(); i++) {
+      float previousObjValue = currObjValue;
+      currObjValue = (state == null) ? bestQualifiedNeighbor(p, t, currObjValue)
+                                     : bestQualifiedMove(state, t, currObjValue);
+      control.countIteration();
+      if (currObjValue != previousObjValue)
+        offered = false;
+      else if (!offered) {                           // No allowed move improves p[][], a local optimum
+        control.offerElite(currObjValue, p);
+        offered = true;
+      }
       // If the new solution is the best seen so far, record it
       if (currObjValue > bestObjValue) {  
     	bestObjValue = currObjValue;
         u.copyArray(p, bestPartition);
+        publish(bestObjValue, bestPartition, state);
         // Renew another 50 iterations before considering to quit
         i = 0;
+        iterationsWithoutImprovement = 0;
+      } else if (control.isStagnated(++iterationsWithoutImprovement)) {
+        float seeded = control.isRestartFromIncumbent() ? control.pullIncumbent(p, bestObjValue) : -Float.MAX_VALUE;
+        if (seeded == -Float.MAX_VALUE)
+          break;                        // Nothing better to restart from
+        if (state != null) {
+          state.load(p);
+          seeded = state.objectiveValue(); // Same cost model as the move evaluations
+        }
+        currObjValue = seeded;          // Restart from the better incumbent
+        bestObjValue = seeded;
+        u.copyArray(p, bestPartition);
+        i = 0;
+        iterationsWithoutImprovement = 0;
       }
+      if (control.isCheckpointDue())
+        writeCheckpoint(p, bestPartition, currObjValue, bestObjValue, i + 1, iterationsWithoutImprovement, t);
     }
-    return bestObjValue;
+    return (state == null) ? bestObjValue : u.objectiveValue(bestPartition);
+  }
+
+  // Publish the best partition with its objective value; values of a SolutionState come from fixed-point sums,
+  // so with @state the value is computed again by objectiveValue(), as every other solver publishes it
+  private void publish(float bestObjValue, int bestPartition[][], SolutionState state) {
+    control.publish((state == null) ? bestObjValue : u.objectiveValue(bestPartition), bestPartition);
+  }
+
+  // Write the state at the end of an iteration to the checkpoint file, @nextIteration is the one to resume with
+  private void writeCheckpoint(int p[][], int bestPartition[][], float currObjValue, float bestObjValue,
+                               int nextIteration, int iterationsWithoutImprovement, TabuList t) {
+    Checkpoint.Output out = new Checkpoint.Output("TabuSearch", u);
+    try {
+      out.writeSolution(p);
+      out.writeSolution(bestPartition);
+      out.writeFloat(currObjValue);
+      out.writeFloat(bestObjValue);
+      out.writeInt(nextIteration);
+      out.writeInt(iterationsWithoutImprovement);
+      t.writeState(out);
+      out.writeRandom(u.getRandom());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    out.commit(control.getCheckpointFile());
   }
 
   // Find the best neighbor that is not tabued, return its objective value as return value,
@@ -55,9 +166,9 @@ public class TabuSearch {
     int bestDept = -1;
     
     // switch each entry (0 to 1, or 1 to 0) in the solution to get neighbor solution
-    for (material = 0; material < materialNum; ++material) {
+    for (material = 0; material < materialNum && !control.shouldStop(); ++material) {
       for(dept = 0; dept < deptNum; ++dept) {
-        if (t.isTabued(material * materialNum + dept))  // If the entry is on the tabu list, skip it
+        if (t.isTabued(material * deptNum + dept))  // If the entry is on the tabu list, skip it
           continue;
         float objValue = objective(p, material, dept); 
         if (objValue > bestObjValue) {
@@ -70,17 +181,35 @@ public class TabuSearch {
     
     // record the best neighbor solution
     if(bestMaterial != -1 && bestDept != -1){
-    	t.insert(bestMaterial * materialNum + bestDept);
+    	t.insert(bestMaterial * deptNum + bestDept);
     	p[bestMaterial][bestDept] = (p[bestMaterial][bestDept] + 1) % 2; // switch 0 and 1
     }
     return bestObjValue;
   }
 
+  // Same as bestQualifiedNeighbor() over the moves of the chosen neighborhood,
+  // each evaluated with its feasibility in O(deptNum) by @state, which is then moved
+  private float bestQualifiedMove(SolutionState state, TabuList t, float currObjValue) {
+    bestMove = null;
+    state.forEachMove(neighborhood, m -> {
+      if (t.isTabued(m.getTabuKey(materialNum, deptNum)))  // If the move is on the tabu list, skip it
+        return;
+      float objValue = state.evaluate(m);
+      if (objValue > (bestMove == null ? currObjValue : bestMove.getObjective()))
+        bestMove = m;
+    });
+    if (bestMove == null)
+      return currObjValue;
+    t.insert(bestMove.getTabuKey(materialNum, deptNum));
+    state.apply(bestMove);
+    return bestMove.getObjective();
+  }
+
   // Evaluate the objective value resulting from switching p[@material][@dept]
   private float objective(int p[][], int material, int dept) {
     u.copyArray(p, neighbor);
     neighbor[material][dept] = (neighbor[material][dept] + 1) % 2; // switch 0 and 1
-    if(u.penaltyValue(neighbor) == 0.0f)
+    if(u.isFeasible(neighbor))
     	return u.objectiveValue(neighbor);
     else
     	return Float.MIN_VALUE;
@@ -88,16 +217,19 @@ public class TabuSearch {
 
   public static void main(String args[]) {
     Utilities u = new Utilities();                    // Create a Utilities object
-    String fileName = "graph10.txt";                  // Default data file name
-    if (args.length == 1)
-      fileName = args[0];                             // Use command-line file name
-    u.readGraph(fileName);
+    CommandLine cl = new CommandLine(args, "graph10.txt"); // Default data file name is graph10.txt
+    cl.configure(u);                                  // Optional random seed
+    u.readGraph(cl.getFileName());
 
     int bestSolution[][] = new int[u.getMaterialNumber()][u.getDeptNumber()]; // Allocate space for best partition
     TabuSearch ts = new TabuSearch();
+    ts.setRunControl(cl.createRunControl(u));         // Optional time limit and stagnation stop
+    ts.configure(cl.getConfig());                     // Optional tuned parameters
+    ts.setNeighborhood(cl.getNeighborhood());
     u.startRun();                                     // Mark the start of run
     float bestObjValue = ts.run(bestSolution, u);     // Run Tabu Search
     u.endRun();                                       // Mark the end of run
+    cl.closeEvents();                                 // Let --events print the last improvements
     // Print out results
     u.reportResult("Tabu search", bestObjValue, bestSolution); 
     // Append results in file costs.txt
@@ -127,6 +259,23 @@ class TabuList {
     return false;
   }
 
+  // Write the tabu memory for a Checkpoint
+  public void writeState(DataOutput out) throws IOException {
+    out.writeInt(tabuListSize);
+    for (int i = 0; i < tabuListSize; i++)
+      out.writeInt(tabuList[i]);
+    out.writeInt(next);
+  }
+
+  // Restore the tabu memory written by writeState()
+  public void readState(DataInput in) throws IOException {
+    if (in.readInt() != tabuListSize)
+      throw new IOException("Tabu list size differs from the checkpoint");
+    for (int i = 0; i < tabuListSize; i++)
+      tabuList[i] = in.readInt();
+    next = in.readInt();
+  }
+
   // Insert entry into the tabu list
   public void insert(int entry) {
     tabuList[next] = entry;        // Insert entry at position next
@@ -4,6 +4,8 @@ import java.util.Arrays;
 import java.util.StringTokenizer;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
 
 // Provide utility methods used by multiple algorithms
 public class Utilities {
@@ -23,6 +25,17 @@ public class Utilities {
   private int[] categoryUpper;   // Upper bound of the amount of materials in each category
   private int[] categoryLower;   // Lower bound of the amount of materials in each category
   private float p = 0.5f;        // Control the degree of importance between preference average value and budget execution rate
+  private int cacheCapacity = 1 << 16;  // Entries kept in the fitness cache
+  private int parallelBatchCells = 1 << 18; // Split a batch across threads above this many solution cells
+  private int maxSwapTries = 1000;      // Random cells randomSwap() tries before giving up
+  private int maxFailedPicks = 10;      // Failed materials per material of a category before randomFeasibleSolution() gives up on it
+  private ZobristTable zobrist;         // Random keys for incremental solution hashing
+  private Instance instance;            // Problem data in flat arrays
+  private EvaluationKernel kernel;      // Backend of the evaluation functions, null for the nested loops below
+  private boolean fixedPoint = false;   // Evaluate with the fixed-point cost model of Instance
+  private FitnessCache fitnessCache;    // Objective and penalty values of recently evaluated solutions
+  private LongAdder evaluations = new LongAdder(); // Solutions evaluated, shared with forks
+  private volatile float upperBound = Float.NaN;  // Bound on the objective value, computed on first use
 
   // Class constructor
   public Utilities() {  
@@ -32,6 +45,54 @@ public class Utilities {
     r = new Random(randomSeed);
   }
   
+  // Restart the random number generator from @seed, for reproducible runs
+  public void setSeed(long seed) {
+    r = new Random(seed);
+  }
+
+  // Continue with random number generator @random, e.g. restored from a checkpoint
+  public void setRandom(Random random) {
+    r = random;
+  }
+
+  // Return a Utilities object sharing this problem instance, with its own random number generator,
+  // for use by another thread
+  public Utilities fork() {
+    Utilities u = new Utilities();
+    u.r = new Random(r.nextLong());
+    u.fileName = fileName;
+    u.materialNum = materialNum;
+    u.deptNum = deptNum;
+    u.categoryNum = categoryNum;
+    u.budget = budget;
+    u.preference = preference;
+    u.belongs = belongs;
+    u.cost = cost;
+    u.categoryUpper = categoryUpper;
+    u.categoryLower = categoryLower;
+    u.p = p;
+    u.zobrist = zobrist;
+    u.instance = instance;
+    u.kernel = kernel;
+    u.fixedPoint = fixedPoint;
+    u.fitnessCache = fitnessCache;
+    u.evaluations = evaluations;
+    u.upperBound = upperBound;
+    return u;
+  }
+
+  // Same as fork(), with an empty fitness cache of its own, for runs timed or compared against each other
+  public Utilities freshFork() {
+    Utilities u = fork();
+    u.fitnessCache = new FitnessCache(cacheCapacity);
+    return u;
+  }
+
+  // Data file name, or the name given to setInstance()
+  public String getFileName() {
+    return fileName;
+  }
+
   // Getter for Random object r
   public Random getRandom() {    
     return r;
@@ -47,6 +108,49 @@ public class Utilities {
     return deptNum;
   }
 
+  // Weight of the average preference value against the budget execution rate
+  public float getPreferenceWeight() {
+    return p;
+  }
+
+  // Getter for the flat problem data
+  public Instance getInstance() {
+    return instance;
+  }
+
+  // Use @kernel for fitnessValue(), objectiveValue() and penaltyValue(), null for the nested loops
+  public void setKernel(EvaluationKernel kernel) {
+    this.kernel = kernel;
+  }
+
+  // Switch the fixed-point cost model on or off
+  // In fixed-point mode preferences and costs are scaled integers, cost shares use exact integer ceiling
+  // division and all sums are longs, so fitnessValue(), objectiveValue(), penaltyValue(), batchEvaluate()
+  // and the feasibility checks agree bit for bit whatever the order of evaluation. Values may differ
+  // slightly from the float model, which the reporting helpers such as getTotalActualCost() still use.
+  // An option for exactness only: evaluations are slower than in the float model, see FixedPointKernel
+  public void setFixedPoint(boolean fixedPoint) {
+    this.fixedPoint = fixedPoint;
+    kernel = fixedPoint ? new FixedPointKernel(instance, p) : EvaluationKernel.create(instance, p);
+    if (fitnessCache != null)
+      fitnessCache = new FitnessCache(cacheCapacity);  // Cached values belong to the previous model
+    upperBound = Float.NaN;                            // So does the upper bound
+  }
+
+  public boolean isFixedPoint() {
+    return fixedPoint;
+  }
+
+  // Getter for the Zobrist keys of this instance
+  public ZobristTable getZobrist() {
+    return zobrist;
+  }
+
+  // Getter for the fitness cache of this instance
+  public FitnessCache getFitnessCache() {
+    return fitnessCache;
+  }
+
   // Make a time stamp for run start time
   public void startRun() {
     startTime = System.currentTimeMillis();
@@ -62,10 +166,30 @@ public class Utilities {
     return endTime - startTime;
   }
 
+  // Amount of solutions evaluated by this object and its forks: objective or fitness values computed,
+  // batch candidates and incremental move evaluations; fitness cache hits are not counted
+  public long getEvaluations() {
+    return evaluations.sum();
+  }
+
+  public void resetEvaluations() {
+    evaluations.reset();
+  }
+
+  // Count @n solution evaluations done outside of this class, e.g. by a SolutionState
+  public void countEvaluations(long n) {
+    evaluations.add(n);
+  }
+
   // Generic way to report run results
   public void reportResult(String message, float bestObjValue, int bestSolution[][]) {
     System.out.println(message + ":  file = " + fileName + "   objective value = " + bestObjValue);
     System.out.println("Run time = " + elapsedTime() + " milliseconds");
+    if (isFeasible(bestSolution))
+      System.out.printf("Upper bound = %s   gap = %.2f%%%n", getUpperBound(), getOptimalityGap(bestObjValue) * 100);
+    else                                         // bestObjValue is a "nothing found" value, no gap to report
+      System.out.println("Upper bound = " + getUpperBound() + "   no feasible solution was found");
+    System.out.println("Fitness cache hit rate = " + (int) (fitnessCache.getHitRate() * 100) + "%");
     //printSolution(bestSolution);
     System.out.println("----------------------------------------------");
   }
@@ -84,11 +208,64 @@ public class Utilities {
   
   // fitness value = objective value - penalty value
   public float fitnessValue(int x[][]){
+    if (kernel != null) {
+      evaluations.increment();
+      float[] result = new float[2];
+      kernel.evaluate(x, result);
+      return result[0] - result[1];
+    }
     return objectiveValue(x) - penaltyValue(x);
   }
 
+  // fitness value of x[][] whose Zobrist hash is @hash, looked up in the fitness cache first
+  public float cachedFitnessValue(int x[][], long hash) {
+    return cachedObjectiveValue(x, hash) - cachedPenaltyValue(x, hash);
+  }
+
+  // objective value of x[][] whose Zobrist hash is @hash, looked up in the fitness cache first
+  public float cachedObjectiveValue(int x[][], long hash) {
+    long entry = fitnessCache.get(hash);
+    float penalty = Float.NaN;
+    if (entry != FitnessCache.MISSING) {
+      float objective = FitnessCache.objective(entry);
+      if (!Float.isNaN(objective)) {
+        fitnessCache.recordLookup(true);
+        return objective;
+      }
+      penalty = FitnessCache.penalty(entry);     // Only the penalty is known so far
+    }
+    fitnessCache.recordLookup(false);
+    float objective = objectiveValue(x);
+    fitnessCache.put(hash, FitnessCache.pack(objective, penalty));
+    return objective;
+  }
+
+  // penalty value of x[][] whose Zobrist hash is @hash, looked up in the fitness cache first
+  public float cachedPenaltyValue(int x[][], long hash) {
+    long entry = fitnessCache.get(hash);
+    float objective = Float.NaN;
+    if (entry != FitnessCache.MISSING) {
+      float penalty = FitnessCache.penalty(entry);
+      if (!Float.isNaN(penalty)) {
+        fitnessCache.recordLookup(true);
+        return penalty;
+      }
+      objective = FitnessCache.objective(entry); // Only the objective is known so far
+    }
+    fitnessCache.recordLookup(false);
+    float penalty = penaltyValue(x);
+    fitnessCache.put(hash, FitnessCache.pack(objective, penalty));
+    return penalty;
+  }
+
   // Objective value function
   public float objectiveValue(int x[][]) {
+    evaluations.increment();
+    if (kernel != null) {
+      float[] result = new float[2];
+      kernel.evaluate(x, result);
+      return result[0];
+    }
     float averPref = getAvePreference(x);
     float budgetRate = getBudgetExecRate(x);
     float value = p * averPref + (1 - p) * budgetRate;
@@ -108,8 +285,10 @@ public class Utilities {
   // get sum of preference values of acquired materials for department @dept
   public float getTotalPrefByDept(int x[][], int dept){
     float total = 0;
+    float[] prefOfDept = instance.getPrefCol();   // Column-major: materials of @dept are contiguous
+    int base = dept * materialNum;
     for(int i = 0; i < materialNum; ++i){
-      total += (x[i][dept] * preference[i][dept]);
+      total += (x[i][dept] * prefOfDept[base + i]);
     }
     return total;
   }
@@ -149,13 +328,96 @@ public class Utilities {
   
   // get total budget of all departments
   public int getTotalBudget(){
-    int total = 0;
-    for(int j = 0; j < deptNum; ++j){
-      total += budget[j];
-    }
-    return total;
+    return instance.getTotalBudget();
   }
   
+  // Upper bound on the objective value of every feasible solution, computed on first use
+  public float getUpperBound(){
+    float bound = upperBound;
+    if (Float.isNaN(bound))
+      upperBound = bound = computeUpperBound();
+    return bound;
+  }
+
+  // Relative gap between @objValue and the upper bound, 0 when @objValue reaches it
+  // Only meaningful for the objective value of a feasible solution, not for a solver's "nothing found" value
+  public float getOptimalityGap(float objValue){
+    float bound = getUpperBound();
+    return (bound == 0) ? 0 : Math.max(0, (bound - objValue) / Math.abs(bound));
+  }
+
+  /*
+   * Relaxation of the problem, department by department: category lower bounds are dropped, and each department
+   * may acquire any material alone, so its actual cost of a material is at most the cost of the material rounded up.
+   * For department j acquiring n materials, at most categoryUpper[k] of them in category k:
+   *   - the average preference value is at most the average of the n highest preference values of j;
+   *   - the actual cost is at most the sum of the n highest costs of materials that j prefers,
+   *     and at most the budget of j (a fractional knapsack filled in cost order);
+   * both greedy lists respect the category upper bounds, which makes each prefix the best one of its size.
+   * The bound adds up, over departments, the best weighted sum of the two terms for any n.
+   * When many departments share few materials, the budget execution rate has a tighter bound over all departments:
+   * the actual costs of a material add up to its cost plus at most 1 per department that prefers it (rounding up),
+   * and at most categoryUpper[k] materials of category k are acquired
+   * Run time is O(deptNum * materialNum), over the sorted orders of Instance
+   */
+  private float computeUpperBound(){
+    double totalBudget = getTotalBudget();
+    double prefSlack = fixedPoint ? 0.5 / Instance.PREF_SCALE : 0;  // Rounding of the fixed-point model
+    int[] byCost = instance.getByCost();
+    int[] deptByPreference = instance.getDeptByPreference();
+    double[] prefPrefix = new double[materialNum + 1];  // Sum of the n highest preference values
+    double[] costPrefix = new double[materialNum + 1];  // Sum of the n highest costs
+    int[] numByCategory = new int[categoryNum];
+    double bound = 0;
+    double prefBound = 0;     // Bound on the preference term alone
+    int[] prefers = new int[materialNum];  // Amount of departments with a positive preference value for each material
+    for (int j = 0; j < deptNum; ++j) {
+      Arrays.fill(numByCategory, 0);
+      int prefNum = 0;
+      for (int n = j * materialNum; n < (j + 1) * materialNum; ++n) {
+        int i = deptByPreference[n];
+        if (numByCategory[belongs[i]] < categoryUpper[belongs[i]]) {
+          ++numByCategory[belongs[i]];
+          prefPrefix[prefNum + 1] = prefPrefix[prefNum] + preference[i][j] + prefSlack;
+          ++prefNum;
+        }
+        if (preference[i][j] > 0)
+          ++prefers[i];
+      }
+      if (prefNum > 0)
+        prefBound += p * prefPrefix[1] / deptNum;
+      Arrays.fill(numByCategory, 0);
+      int costNum = 0;
+      for (int i : byCost) {
+        if (preference[i][j] > 0 && numByCategory[belongs[i]] < categoryUpper[belongs[i]]) {
+          ++numByCategory[belongs[i]];
+          costPrefix[costNum + 1] = costPrefix[costNum] + Math.ceil(cost[i] + 0.005);
+          ++costNum;
+        }
+      }
+      double best = 0;
+      for (int n = 1; n <= prefNum; ++n) {
+        double prefTerm = p * prefPrefix[n] / n / deptNum;
+        double costTerm = (totalBudget == 0) ? 0
+                        : (1 - p) * Math.min(budget[j], costPrefix[Math.min(n, costNum)]) / totalBudget;
+        best = Math.max(best, prefTerm + costTerm);
+      }
+      bound += best;
+    }
+    if (totalBudget != 0) {
+      Arrays.fill(numByCategory, 0);
+      double totalCost = 0;
+      for (int i : byCost) {
+        if (prefers[i] > 0 && numByCategory[belongs[i]] < categoryUpper[belongs[i]]) {
+          ++numByCategory[belongs[i]];
+          totalCost += cost[i] + 0.005 + prefers[i];
+        }
+      }
+      bound = Math.min(bound, prefBound + (1 - p) * Math.min(totalBudget, totalCost) / totalBudget);
+    }
+    return (float) (bound * (1 + 1e-6) + 1e-6);  // Keep clear of float rounding in objectiveValue()
+  }
+
   // get actual cost of each department for each material
   public int[][] getActualCost(int x[][]){
     int[][] result = new int[materialNum][deptNum];
@@ -198,12 +460,127 @@ public class Utilities {
   
   // get penalty value for solution x[][]
   public float penaltyValue(int x[][]){
+    if (kernel != null) {
+      float[] result = new float[2];
+      kernel.evaluate(x, result);
+      return result[1];
+    }
     float budgetPenalty = getBudgetPenalty(x);
     float categoryPenalty = getCategoryPenalty(x);
     float penalty = budgetPenalty + categoryPenalty;
     return penalty;
   }
   
+  // Return true if x[][] meets all budget and category constraints, the same as penaltyValue(x) == 0
+  public boolean isFeasible(int x[][]){
+    return findViolation(x) == null;
+  }
+
+  // Same as isFeasible(x), for x[][] with Zobrist hash @hash: a known penalty value is taken from the fitness cache,
+  // and a feasible x[][] is recorded there with penalty 0
+  public boolean cachedIsFeasible(int x[][], long hash){
+    long entry = fitnessCache.get(hash);
+    float objective = Float.NaN;
+    if (entry != FitnessCache.MISSING) {
+      float penalty = FitnessCache.penalty(entry);
+      if (!Float.isNaN(penalty)) {
+        fitnessCache.recordLookup(true);
+        return penalty == 0;
+      }
+      objective = FitnessCache.objective(entry);
+    }
+    fitnessCache.recordLookup(false);
+    boolean feasible = isFeasible(x);
+    if (feasible)
+      fitnessCache.put(hash, FitnessCache.pack(objective, 0));
+    return feasible;
+  }
+
+  // Return the first constraint x[][] violates, or null if it is feasible
+  // Category bounds are checked first with integer counts, stopping as soon as a category exceeds its upper bound;
+  // then the budgets, see findBudgetViolation()
+  public Violation findViolation(int x[][]){
+    int[] numByCategory = new int[categoryNum];
+    for(int i = 0; i < materialNum; ++i){
+      int[] row = x[i];
+      for(int j = 0; j < deptNum; ++j){
+        if(row[j] == 1){
+          int k = belongs[i];
+          if(++numByCategory[k] > categoryUpper[k])
+            return new Violation(Violation.Type.CATEGORY_UPPER, k, numByCategory[k], categoryUpper[k]);
+          break;
+        }
+      }
+    }
+    for(int k = 0; k < categoryNum; ++k){
+      if(numByCategory[k] < categoryLower[k])
+        return new Violation(Violation.Type.CATEGORY_LOWER, k, numByCategory[k], categoryLower[k]);
+    }
+    return findBudgetViolation(x);
+  }
+
+  // Return true if x[][] meets the budgets of all departments, the same as getBudgetPenalty(x) == 0
+  public boolean isWithinBudget(int x[][]){
+    return findBudgetViolation(x) == null;
+  }
+
+  // Return the first department whose budget x[][] exceeds, or null
+  // Department costs are summed as integers material by material and only grow,
+  // so the check stops as soon as one of them exceeds its budget
+  public Violation findBudgetViolation(int x[][]){
+    if (fixedPoint)
+      return findFixedBudgetViolation(x);
+    int[] costByDept = new int[deptNum];
+    float[] prefRow = instance.getPrefRow();
+    for(int i = 0; i < materialNum; ++i){
+      int[] row = x[i];
+      int base = i * deptNum;
+      float totalPref = 0;
+      for(int j = 0; j < deptNum; ++j){
+        if(row[j] == 1)
+          totalPref += prefRow[base + j];
+      }
+      if(totalPref == 0)
+        continue;
+      for(int j = 0; j < deptNum; ++j){
+        if(row[j] == 1){
+          costByDept[j] += (int) Math.ceil(prefRow[base + j] * cost[i] / totalPref);
+          if(costByDept[j] > budget[j])
+            return new Violation(Violation.Type.BUDGET, j, costByDept[j], budget[j]);
+        }
+      }
+    }
+    return null;
+  }
+
+  // Same as findBudgetViolation() with the fixed-point cost model: integer arithmetic only
+  private Violation findFixedBudgetViolation(int x[][]){
+    long[] costByDept = new long[deptNum];
+    int[] prefFixed = instance.getPrefFixed();
+    long[] costFixed = instance.getCostFixed();
+    for(int i = 0; i < materialNum; ++i){
+      int[] row = x[i];
+      int base = i * deptNum;
+      long totalPref = 0;
+      for(int j = 0; j < deptNum; ++j){
+        if(row[j] == 1)
+          totalPref += prefFixed[base + j];
+      }
+      if(totalPref == 0)
+        continue;
+      long divisor = Instance.shareDivisor(totalPref);
+      double reciprocal = 1.0 / divisor;
+      for(int j = 0; j < deptNum; ++j){
+        if(row[j] == 1){
+          costByDept[j] += Instance.fixedShare(prefFixed[base + j], costFixed[i], divisor, reciprocal);
+          if(costByDept[j] > budget[j])
+            return new Violation(Violation.Type.BUDGET, j, (int) costByDept[j], budget[j]);
+        }
+      }
+    }
+    return null;
+  }
+
   // get penalty value for budget constrains for all departments
   public float getBudgetPenalty(int x[][]){
     float result = 0;
@@ -215,24 +592,24 @@ public class Utilities {
   }
   
   // get penalty value for category constrains for all departments
+  // Amounts of acquired materials by category are counted in one pass over the materials, O(materialNum * deptNum)
   public float getCategoryPenalty(int x[][]){
-    float penalty = 0;
     boolean[] acquiredStatus = getAcquiredStatus(x);
-    for(int k = 0; k < categoryNum; ++k){
-      int acquiredNum = getMaterialNumByCategoryAndStatus(acquiredStatus, k, true);
-      if(acquiredNum > categoryUpper[k])
-        penalty += Math.max(0.0f, (float)(acquiredNum - categoryUpper[k]) / Math.abs(acquiredNum - categoryLower[k]));
-      if(acquiredNum < categoryLower[k])
-        penalty += Math.max(0.0f, (float)(categoryLower[k] - acquiredNum) / Math.abs(categoryUpper[k] - acquiredNum));
+    int[] numByCategory = new int[categoryNum];
+    for(int i = 0; i < materialNum; ++i){
+      if(acquiredStatus[i])
+        ++ numByCategory[belongs[i]];
     }
-    return penalty;
+    return instance.categoryPenalty(numByCategory);
   }
   
   // get @isAcquired materials number in category @category
   public int getMaterialNumByCategoryAndStatus(boolean[] acquiredStatus, int category, boolean isAcquired){
+    int[] start = instance.getCategoryStart();
+    int[] materials = instance.getCategoryMaterials();
     int num = 0;
-    for(int i = 0; i < materialNum; ++i){
-      if(isAcquired == acquiredStatus[i] && belongs[i] == category)
+    for(int n = start[category]; n < start[category + 1]; ++n){
+      if(isAcquired == acquiredStatus[materials[n]])
         ++ num;
       }
     return num;
@@ -253,6 +630,150 @@ public class Utilities {
     return result;
   }
   
+
+  /*
+   * Batch evaluation: objective[c] and penalty[c] of solutions[c] for c < @count, in one pass
+   * over the instance. The material loop is outermost, so each preference row and cost is
+   * read once for all candidates; per-candidate sums per department and per category are kept
+   * in small accumulator arrays. Results are identical to objectiveValue() and penaltyValue().
+   * Large batches are split into groups of candidates evaluated on different threads.
+   */
+  public void batchEvaluate(int solutions[][][], int count, float objective[], float penalty[]) {
+    evaluations.add(count);
+    int groups = 1;
+    if ((long) count * materialNum * deptNum >= parallelBatchCells)
+      groups = Math.min(count, Runtime.getRuntime().availableProcessors());
+    if (groups <= 1) {
+      batchEvaluate(solutions, 0, count, objective, penalty);
+    } else {
+      final int groupSize = (count + groups - 1) / groups;
+      IntStream.range(0, groups).parallel().forEach(g ->
+        batchEvaluate(solutions, g * groupSize, Math.min(count, (g + 1) * groupSize), objective, penalty));
+    }
+  }
+
+  // Same as batchEvaluate(), only solutions whose Zobrist hash @hashes[c] is not in the fitness cache are evaluated
+  public void cachedBatchEvaluate(int solutions[][][], long hashes[], int count, float objective[], float penalty[]) {
+    int[][][] missed = new int[count][][];
+    int[] missedIndex = new int[count];
+    int missCount = 0;
+    for (int c = 0; c < count; ++c) {
+      long entry = fitnessCache.get(hashes[c]);
+      if (entry != FitnessCache.MISSING
+          && !Float.isNaN(FitnessCache.objective(entry)) && !Float.isNaN(FitnessCache.penalty(entry))) {
+        fitnessCache.recordLookup(true);
+        objective[c] = FitnessCache.objective(entry);
+        penalty[c] = FitnessCache.penalty(entry);
+      } else {
+        fitnessCache.recordLookup(false);
+        missed[missCount] = solutions[c];
+        missedIndex[missCount++] = c;
+      }
+    }
+    if (missCount == 0)
+      return;
+    float[] missedObjective = new float[missCount];
+    float[] missedPenalty = new float[missCount];
+    batchEvaluate(missed, missCount, missedObjective, missedPenalty);
+    for (int m = 0; m < missCount; ++m) {
+      int c = missedIndex[m];
+      objective[c] = missedObjective[m];
+      penalty[c] = missedPenalty[m];
+      fitnessCache.put(hashes[c], FitnessCache.pack(objective[c], penalty[c]));
+    }
+  }
+
+  // Evaluate solutions[from] to solutions[to - 1] of a batch
+  private void batchEvaluate(int solutions[][][], int from, int to, float objective[], float penalty[]) {
+    if (fixedPoint) {
+      batchEvaluateFixed(solutions, from, to, objective, penalty);
+      return;
+    }
+    int n = to - from;
+    float[][] prefByDept = new float[n][deptNum];  // Sum of preference values by department
+    int[][] numByDept = new int[n][deptNum];       // Amount of materials by department
+    int[][] costByDept = new int[n][deptNum];      // Actual cost by department
+    int[][] numByCategory = new int[n][categoryNum]; // Amount of acquired materials by category
+
+    for (int i = 0; i < materialNum; ++i) {
+      float[] pref = preference[i];                // Streamed once for all candidates
+      float materialCost = cost[i];
+      int category = belongs[i];
+      for (int c = 0; c < n; ++c) {
+        int[] row = solutions[from + c][i];
+        float totalPref = 0;
+        boolean acquired = false;
+        for (int j = 0; j < deptNum; ++j) {
+          if (row[j] == 1) {
+            totalPref += pref[j];
+            prefByDept[c][j] += pref[j];
+            ++numByDept[c][j];
+            acquired = true;
+          }
+        }
+        if (!acquired)
+          continue;
+        ++numByCategory[c][category];
+        if (totalPref != 0) {
+          for (int j = 0; j < deptNum; ++j) {
+            if (row[j] == 1)
+              costByDept[c][j] += (int) Math.ceil(pref[j] * materialCost / totalPref);
+          }
+        }
+      }
+    }
+
+    for (int c = 0; c < n; ++c) {
+      objective[from + c] = instance.objectiveFromSums(prefByDept[c], numByDept[c], costByDept[c], p);
+      penalty[from + c] = instance.penaltyFromSums(costByDept[c], numByCategory[c]);
+    }
+  }
+
+  // Evaluate solutions[from] to solutions[to - 1] of a batch with the fixed-point cost model
+  private void batchEvaluateFixed(int solutions[][][], int from, int to, float objective[], float penalty[]) {
+    int n = to - from;
+    long[][] prefByDept = new long[n][deptNum];    // Scaled sum of preference values by department
+    int[][] numByDept = new int[n][deptNum];       // Amount of materials by department
+    long[][] costByDept = new long[n][deptNum];    // Actual cost by department
+    int[][] numByCategory = new int[n][categoryNum]; // Amount of acquired materials by category
+    int[] prefFixed = instance.getPrefFixed();
+    long[] costFixed = instance.getCostFixed();
+
+    for (int i = 0; i < materialNum; ++i) {
+      int base = i * deptNum;                      // Row streamed once for all candidates
+      long materialCost = costFixed[i];
+      int category = belongs[i];
+      for (int c = 0; c < n; ++c) {
+        int[] row = solutions[from + c][i];
+        long totalPref = 0;
+        boolean acquired = false;
+        for (int j = 0; j < deptNum; ++j) {
+          if (row[j] == 1) {
+            totalPref += prefFixed[base + j];
+            prefByDept[c][j] += prefFixed[base + j];
+            ++numByDept[c][j];
+            acquired = true;
+          }
+        }
+        if (!acquired)
+          continue;
+        ++numByCategory[c][category];
+        if (totalPref != 0) {
+          long divisor = Instance.shareDivisor(totalPref);
+          double reciprocal = 1.0 / divisor;
+          for (int j = 0; j < deptNum; ++j) {
+            if (row[j] == 1)
+              costByDept[c][j] += Instance.fixedShare(prefFixed[base + j], materialCost, divisor, reciprocal);
+          }
+        }
+      }
+    }
+
+    for (int c = 0; c < n; ++c) {
+      objective[from + c] = instance.objectiveFromFixedSums(prefByDept[c], numByDept[c], costByDept[c], p);
+      penalty[from + c] = instance.penaltyFromFixedSums(costByDept[c], numByCategory[c]);
+    }
+  }
   
   /*
    * For generating random feasible solution
@@ -263,13 +784,21 @@ public class Utilities {
    *     2. Randomly select a department j, check if current solution meets budget constrains with position[i][j] equals to 1. If yes, set position[i][j] to 1;
    *   End loop
    *   
-   * TODO: This method will get struck if there is not feasible solution existent
+   * A category is given up after maxFailedPicks materials per material of the category found no department
+   * within budget, so the method ends even if there is no feasible solution
+   * Return false if a lower bound was not met, x[][] is then infeasible
    */
-  public void randomFeasibleSolution(int x[][]){
+  public boolean randomFeasibleSolution(int x[][]){
+    boolean complete = true;
     for(int k = 0; k < categoryNum; ++k){
       Vector<Integer> materialNoAcquired = getMaterialsByCategory(k);
       int MaterialNumInk = materialNoAcquired.size();
+      int failedPicks = 0;
       while(MaterialNumInk - materialNoAcquired.size() < categoryLower[k]){
+        if(failedPicks >= maxFailedPicks * MaterialNumInk) {
+          complete = false;
+          break;
+        }
         if(materialNoAcquired.isEmpty()) {
           break;
         } else {
@@ -279,7 +808,7 @@ public class Utilities {
           while(limitIteration > 0){ // for department
             int dept = r.nextInt(deptNum);
             x[material][dept] = 1;
-            if(getBudgetPenalty(x) == 0) {
+            if(isWithinBudget(x)) {
               materialNoAcquired.remove(index);
               break;
             } else {
@@ -287,35 +816,144 @@ public class Utilities {
               -- limitIteration;
             }
           }
+          if(limitIteration == 0)
+            ++ failedPicks;
         }
       }
+      if(materialNoAcquired.isEmpty() && MaterialNumInk < categoryLower[k])
+        complete = false;
     }
 	  
     /*System.out.println("----------feasible solution------------");
     printPartition(x);
     System.out.println();*/
+    return complete;
   }
   
-  // Get all materials by category @category
-  public Vector<Integer> getMaterialsByCategory(int category){
-    Vector<Integer> result = new Vector<Integer>();
-    for(int i = 0; i < materialNum; ++i){
-      if(belongs[i] == category){
-        result.add(i);
+  // Replace the instance data by a copy with @delta applied; derived data and cached values are rebuilt
+  // Utilities objects forked before keep the previous data
+  public void applyDelta(InstanceDelta delta) {
+    int[] newBudget = budget.clone();
+    float[][] newPreference = new float[materialNum][];
+    for (int i = 0; i < materialNum; ++i)
+      newPreference[i] = preference[i].clone();
+    float[] newCost = cost.clone();
+    int[] newLower = categoryLower.clone();
+    int[] newUpper = categoryUpper.clone();
+    delta.applyTo(newBudget, newPreference, newCost, newLower, newUpper);
+    budget = newBudget;
+    preference = newPreference;
+    cost = newCost;
+    categoryLower = newLower;
+    categoryUpper = newUpper;
+    instance = new Instance(budget, preference, belongs, cost, categoryLower, categoryUpper);
+    setFixedPoint(fixedPoint);  // New kernel and an empty fitness cache
+  }
+
+  /*
+   * Make x[][] feasible with as few changes as possible, e.g. a solution of yesterday's instance
+   * Process:
+   * Loop, while x[][] violates a constraint
+   *   1. Category over its upper bound: drop the acquired material of the category with the lowest total preference value;
+   *   2. Department over budget: drop its material with the lowest preference value;
+   *   3. Category under its lower bound: acquire the material of the category and department with the highest
+   *      preference value that keeps all budgets;
+   * End loop
+   * Budgets are repaired before lower bounds, as step 3 rejects every addition while some budget is exceeded
+   * Return false if a lower bound cannot be met, x[][] is then left infeasible
+   */
+  public boolean repair(int x[][]){
+    int[] categoryStart = instance.getCategoryStart();
+    int[] categoryMaterials = instance.getCategoryMaterials();
+    for(int step = 0; step <= 2 * materialNum * deptNum; ++step){
+      Violation v = findViolation(x);
+      if(v == null)
+        return true;
+      if(v.getType() == Violation.Type.CATEGORY_LOWER){
+        Violation budgetViolation = findBudgetViolation(x);
+        if(budgetViolation != null)
+          v = budgetViolation;
+      }
+      int k = v.getIndex();
+      int bestMaterial = -1;
+      int bestDept = -1;
+      float bestPref = 0;
+      switch(v.getType()){
+        case CATEGORY_UPPER:
+          for(int n = categoryStart[k]; n < categoryStart[k + 1]; ++n){
+            int i = categoryMaterials[n];
+            float totalPref = 0;
+            boolean acquired = false;
+            for(int j = 0; j < deptNum; ++j){
+              if(x[i][j] == 1){
+                totalPref += preference[i][j];
+                acquired = true;
+              }
+            }
+            if(acquired && (bestMaterial == -1 || totalPref < bestPref)){
+              bestMaterial = i;
+              bestPref = totalPref;
+            }
+          }
+          Arrays.fill(x[bestMaterial], 0);
+          break;
+        case CATEGORY_LOWER:
+          for(int n = categoryStart[k]; n < categoryStart[k + 1]; ++n){
+            int i = categoryMaterials[n];
+            if(getAcquiredNum(x, i) > 0)
+              continue;
+            for(int j = 0; j < deptNum; ++j){
+              if(bestMaterial != -1 && preference[i][j] <= bestPref)
+                continue;
+              x[i][j] = 1;
+              if(isWithinBudget(x)){
+                bestMaterial = i;
+                bestDept = j;
+                bestPref = preference[i][j];
+              }
+              x[i][j] = 0;
+            }
+          }
+          if(bestMaterial == -1)
+            return false;
+          x[bestMaterial][bestDept] = 1;
+          break;
+        case BUDGET:
+          for(int i = 0; i < materialNum; ++i){
+            if(x[i][k] == 1 && (bestMaterial == -1 || preference[i][k] < bestPref)){
+              bestMaterial = i;
+              bestPref = preference[i][k];
+            }
+          }
+          x[bestMaterial][k] = 0;
+          break;
       }
     }
+    return isFeasible(x);
+  }
+
+  // Amount of departments acquiring material @material in x[][]
+  private int getAcquiredNum(int x[][], int material){
+    int num = 0;
+    for(int j = 0; j < deptNum; ++j)
+      num += x[material][j];
+    return num;
+  }
+
+  // Get all materials by category @category
+  // A new list the caller may modify, copied from the category index of Instance
+  public Vector<Integer> getMaterialsByCategory(int category){
+    int[] start = instance.getCategoryStart();
+    int[] materials = instance.getCategoryMaterials();
+    Vector<Integer> result = new Vector<Integer>(start[category + 1] - start[category]);
+    for(int n = start[category]; n < start[category + 1]; ++n)
+      result.add(materials[n]);
     return result;
   }
   
   // Get amount of materials in category @category
   public int getMaterialNumByCategory(int category){
-    int num = 0;
-    for(int i = 0; i < materialNum; ++i){
-      if(category == belongs[i]){
-        ++ num;
-      }
-    }
-    return num;
+    return instance.getCategorySize(category);
   }
   
   // Get amount of acquired materials 
@@ -333,17 +971,35 @@ public class Utilities {
   }
   
   // Randomly switch to get a feasible neighborhood
-  public void randomSwap(int p[][]) {
-    while (true) {
+  // Return the switched cell as material * deptNum + dept, or -1 with p[][] unchanged if none of maxSwapTries
+  // random cells gives a feasible neighbor; the caller may then check its deadline and try again
+  public int randomSwap(int p[][]) {
+    for (int tries = 0; tries < maxSwapTries; ++tries) {
       int x = r.nextInt(materialNum);   // Randomly choose a material and a department
       int y = r.nextInt(deptNum);
       p[x][y] = (p[x][y] + 1) % 2;  // Change 0 to 1, or 1 to 0
-      if(penaltyValue(p) == 0)
-        return;
+      if(isFeasible(p))
+        return x * deptNum + y;
       else
         p[x][y] = (p[x][y] + 1) % 2; // Change back
     }
+    return -1;
  }
+
+  // Same as randomSwap(p), for p[][] with Zobrist hash @hash: penalties are looked up in the fitness cache
+  // Return the switched cell as material * deptNum + dept, or -1 with p[][] unchanged
+  public int randomSwap(int p[][], long hash) {
+    for (int tries = 0; tries < maxSwapTries; ++tries) {
+      int x = r.nextInt(materialNum);   // Randomly choose a material and a department
+      int y = r.nextInt(deptNum);
+      p[x][y] = (p[x][y] + 1) % 2;  // Change 0 to 1, or 1 to 0
+      if(cachedIsFeasible(p, hash ^ zobrist.key(x, y)))
+        return x * deptNum + y;
+      else
+        p[x][y] = (p[x][y] + 1) % 2; // Change back
+    }
+    return -1;
+  }
  
   // Copy from[][] into to[][]
   public void copyArray(int from[][], int to[][]) {
@@ -429,6 +1085,8 @@ public class Utilities {
           preference[i][j] = Float.parseFloat(token);
         }
       }
+
+      buildInstance();
     } catch (Exception e) {
       System.out.print(e.getMessage());
     } finally {
@@ -441,6 +1099,30 @@ public class Utilities {
     }
   }
 
+  // Use the given problem data instead of a data file, e.g. for a subproblem; @name stands for the file name
+  public void setInstance(String name, int budget[], float preference[][], int belongs[], float cost[],
+                          int categoryLower[], int categoryUpper[]) {
+    fileName = name;
+    materialNum = belongs.length;
+    deptNum = budget.length;
+    categoryNum = categoryUpper.length;
+    this.budget = budget;
+    this.preference = preference;
+    this.belongs = belongs;
+    this.cost = cost;
+    this.categoryLower = categoryLower;
+    this.categoryUpper = categoryUpper;
+    buildInstance();
+  }
+
+  // Build the data derived from the problem arrays
+  private void buildInstance() {
+    instance = new Instance(budget, preference, belongs, cost, categoryLower, categoryUpper);
+    setFixedPoint(Boolean.getBoolean("fixedPoint"));  // -DfixedPoint=true for the fixed-point cost model
+    zobrist = new ZobristTable(materialNum, deptNum, materialNum * 31L + deptNum);
+    fitnessCache = new FitnessCache(cacheCapacity);
+  }
+
   // Append the best cost to file costs.txt for off-line analysis
   public void appendBestPartition(String message, float bestObjValue, int bestSolution[][]) {
     try {
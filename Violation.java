@@ -0,0 +1,43 @@
+// Ana Wu, Pace University, April 2016
+/*
+ * Violation
+ * A constraint a solution breaks, as reported by Utilities.findViolation():
+ * the budget of a department, or the upper or lower bound of a category.
+ */
+public class Violation {
+  public enum Type { BUDGET, CATEGORY_UPPER, CATEGORY_LOWER }
+
+  private final Type type;
+  private final int index;      // Department for BUDGET, category otherwise
+  private final int amount;     // Actual cost or amount of acquired materials when the check stopped
+  private final int limit;      // Budget or category bound
+
+  public Violation(Type type, int index, int amount, int limit) {
+    this.type = type;
+    this.index = index;
+    this.amount = amount;
+    this.limit = limit;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public int getAmount() {
+    return amount;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  @Override
+  public String toString() {
+    String what = (type == Type.BUDGET) ? "department " : "category ";
+    return type + " of " + what + index + ": " + amount + " against " + limit;
+  }
+}
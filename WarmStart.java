@@ -0,0 +1,97 @@
+// Ana Wu, Pace University, April 2016
+import java.io.File;
+import java.io.IOException;
+
+/*
+ * Warm start
+ * Re-optimize after the instance data changed a little, starting from the solution stored for it
+ * instead of a random one.
+ *
+ * Process:
+ * 1.Read the instance and apply the changes given as InstanceDelta, e.g. "dept 3 budget -10%";
+ * 2.Load the solution stored next to the instance file and repair it against the new budgets
+ *   and category bounds. Only the violated constraints are touched, so the rest of the solution
+ *   is kept as it was;
+ * 3.Publish it as the incumbent of the run control: SA and Tabu Search start from it, the swarms
+ *   seed a particle with it. Solve with a short budget, warmTimeLimit milliseconds unless given;
+ * 4.Without changes, store the new best solution for the next run. With changes the run is a
+ *   what-if query, and the stored solution is left alone.
+ * Without a stored solution, or one that cannot be repaired, the solver starts cold.
+ *
+ * Usage: java WarmStart [fileName] [--algorithm sa|tabu|dpso|dpso-sa|async-dpso|portfolio]
+ *                       [--delta change]... [--time-limit milliseconds]
+ */
+public class WarmStart {
+
+  // parameters for adjustment
+  private long warmTimeLimit = 2000;     // Time limit in milliseconds when none is given
+
+  private boolean warm;                  // The last run started from a stored solution
+
+  // Seed @control with the stored solution for instance file @fileName, repaired for the data in @u
+  // Return the objective value of the seed, or -Float.MAX_VALUE if the run starts cold
+  public float seed(Utilities u, String fileName, RunControl control) {
+    warm = false;
+    String storeName = SolutionStore.fileNameFor(fileName);
+    if (!new File(storeName).exists())
+      return -Float.MAX_VALUE;
+    int x[][] = new int[u.getMaterialNumber()][u.getDeptNumber()];
+    try {
+      SolutionStore.load(storeName, x);
+    } catch (IOException e) {
+      System.out.println(e.getMessage());
+      return -Float.MAX_VALUE;
+    }
+    if (!u.repair(x))
+      return -Float.MAX_VALUE;
+    float objValue = u.objectiveValue(x);
+    control.publish(objValue, x);
+    warm = true;
+    return objValue;
+  }
+
+  // Return true if the last run started from a stored solution
+  public boolean isWarm() {
+    return warm;
+  }
+
+  public long getWarmTimeLimit() {
+    return warmTimeLimit;
+  }
+
+  public static void main(String args[]) {
+    Utilities u = new Utilities();                    // Create a Utilities object
+    CommandLine cl = new CommandLine(args, "10.txt"); // Default data file name is 10.txt
+    u.readGraph(cl.getFileName());
+    for (InstanceDelta delta : cl.getDeltas())
+      u.applyDelta(delta);                            // What-if changes to the instance data
+
+    WarmStart warmStart = new WarmStart();
+    RunControl control = cl.createRunControl(u);
+    if (cl.getTimeLimit() == 0)
+      control.setTimeLimit(warmStart.getWarmTimeLimit());
+    float seedObjValue = warmStart.seed(u, cl.getFileName(), control);
+
+    int bestSolution[][] = new int[u.getMaterialNumber()][u.getDeptNumber()]; // Allocate space for best solution
+    Solver solver = Solver.create(cl.getAlgorithm());
+    solver.setRunControl(control);
+    solver.configure(cl.getConfig());
+    u.startRun();                                     // Mark the start of run
+    float bestObjValue = solver.run(bestSolution, u); // Run the chosen algorithm
+    u.endRun();                                       // Mark the end of run
+    cl.closeEvents();                                 // Let --events print the last improvements
+    // Print out results
+    if (warmStart.isWarm())
+      System.out.println("Warm start from the stored solution, repaired objective value = " + seedObjValue);
+    else
+      System.out.println("Cold start");
+    u.reportResult("Warm start " + cl.getAlgorithm(), bestObjValue, bestSolution);
+    if (cl.getDeltas().isEmpty()) {
+      try {
+        SolutionStore.save(SolutionStore.fileNameFor(cl.getFileName()), bestObjValue, bestSolution);
+      } catch (IOException e) {
+        System.out.println(e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,45 @@
+// Ana Wu, Pace University, April 2016
+import java.util.Random;
+
+/*
+ * ZobristTable
+ * One random 64-bit key per cell of the solution matrix. The hash of a solution is the XOR
+ * of the keys of all cells set to 1, so flipping cell (i, j) updates the hash in O(1):
+ *   hash = hash ^ key(i, j)
+ */
+public class ZobristTable {
+  private final int deptNum;
+  private final long[] keys;      // Key of cell (i, j) at i * deptNum + j
+
+  // Class constructor; the same @seed always gives the same keys
+  public ZobristTable(int materialNum, int deptNum, long seed) {
+    this.deptNum = deptNum;
+    keys = new long[materialNum * deptNum];
+    Random r = new Random(seed);
+    for (int k = 0; k < keys.length; ++k)
+      keys[k] = r.nextLong();
+  }
+
+  // Key of cell (@material, @dept)
+  public long key(int material, int dept) {
+    return keys[material * deptNum + dept];
+  }
+
+  // Key of cell number @cell = material * deptNum + dept
+  public long key(int cell) {
+    return keys[cell];
+  }
+
+  // Full hash of solution x[][]
+  public long hash(int x[][]) {
+    long h = 0;
+    for (int i = 0; i < x.length; ++i) {
+      int base = i * deptNum;
+      for (int j = 0; j < deptNum; ++j) {
+        if (x[i][j] == 1)
+          h ^= keys[base + j];
+      }
+    }
+    return h;
+  }
+}
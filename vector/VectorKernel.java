@@ -0,0 +1,139 @@
+// Ana Wu, Pace University, April 2016
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * VectorKernel
+ * Same row-major pass as ScalarKernel, with the departments of one material processed
+ * a vector at a time:
+ *   - x[i][j] * preference[i][j] is a bitwise AND of the preference values with -x[i][j],
+ *     so no masks or conversions are needed;
+ *   - the row sum of preference values is taken one department at a time, in the order of the
+ *     scalar loop, so the cost shares and their ceil() are exactly those of ScalarKernel and of the
+ *     budget checks in Utilities;
+ *   - cost shares are a lane-wise multiply and divide, and ceil() rounds them with float arithmetic
+ *     only (costs must be below 2^22, otherwise the scalar kernel is used);
+ *   - the per-department sums are updated with lane-wise adds.
+ * Departments past the last full vector are handled one by one.
+ * The per-department preference sums are added lane-wise in the same order as the scalar loop,
+ * so results are identical to ScalarKernel.
+ *
+ * Kept out of the default build in its own source directory, because it needs the incubator module:
+ *   javac -d classes *.java
+ *   javac --add-modules jdk.incubator.vector -cp classes -d classes vector/VectorKernel.java
+ *   java --add-modules jdk.incubator.vector -cp classes <Solver> ...
+ * Without it, EvaluationKernel.create() uses ScalarKernel.
+ */
+public class VectorKernel implements EvaluationKernel {
+  private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+  private static final float ROUNDING = 8388608f;                 // 2^23
+  private static final int ROUNDING_BITS = Float.floatToRawIntBits(ROUNDING);
+  private static final float MAX_SHARE = 4194304f;                // 2^22
+
+  private final Instance instance;
+  private final int materialNum;
+  private final int deptNum;
+  private final float[] prefRow;
+  private final float[] cost;
+  private final int[] belongs;
+  private final float p;
+
+  // Return true if the kernel can evaluate solutions of @instance: float and int vectors have the same
+  // lane count, and every cost is within the range of the vector ceil()
+  public static boolean isSupported(Instance instance) {
+    if (FLOATS.length() != INTS.length())
+      return false;
+    for (float c : instance.getCost()) {
+      if (!(c >= 0 && c < MAX_SHARE))
+        return false;
+    }
+    return true;
+  }
+
+  // Class constructor; check isSupported(instance) first
+  public VectorKernel(Instance instance, float p) {
+    this.instance = instance;
+    this.p = p;
+    materialNum = instance.getMaterialNumber();
+    deptNum = instance.getDeptNumber();
+    prefRow = instance.getPrefRow();
+    cost = instance.getCost();
+    belongs = instance.getBelongs();
+  }
+
+  @Override
+  public void evaluate(int x[][], float result[]) {
+    float[] prefByDept = new float[deptNum];   // Sum of preference values by department
+    int[] numByDept = new int[deptNum];        // Amount of materials by department
+    int[] costByDept = new int[deptNum];       // Actual cost by department
+    int[] numByCategory = new int[instance.getCategoryNumber()]; // Amount of acquired materials by category
+    int bound = FLOATS.loopBound(deptNum);     // Departments handled a vector at a time, the rest one by one
+
+    for (int i = 0; i < materialNum; ++i) {
+      int[] row = x[i];
+      int base = i * deptNum;
+      float totalPref = 0;
+      IntVector count = IntVector.zero(INTS);
+      int j = 0;
+      for (; j < bound; j += FLOATS.length()) {
+        IntVector cells = IntVector.fromArray(INTS, row, j);
+        FloatVector pref = select(FloatVector.fromArray(FLOATS, prefRow, base + j), cells);
+        count = count.add(cells);
+        FloatVector.fromArray(FLOATS, prefByDept, j).add(pref).intoArray(prefByDept, j);
+        IntVector.fromArray(INTS, numByDept, j).add(cells).intoArray(numByDept, j);
+      }
+      int acquiredBy = count.reduceLanes(VectorOperators.ADD);
+      for (int k = 0; k < bound; ++k) {       // Scalar order, see above
+        if (row[k] == 1)
+          totalPref += prefRow[base + k];
+      }
+      for (; j < deptNum; ++j) {
+        if (row[j] == 1) {
+          float pref = prefRow[base + j];
+          totalPref += pref;
+          prefByDept[j] += pref;
+          ++numByDept[j];
+          ++acquiredBy;
+        }
+      }
+      if (acquiredBy == 0)
+        continue;
+      ++numByCategory[belongs[i]];
+      if (totalPref == 0)
+        continue;
+
+      float materialCost = cost[i];
+      for (j = 0; j < bound; j += FLOATS.length()) {
+        IntVector cells = IntVector.fromArray(INTS, row, j);
+        FloatVector share = select(FloatVector.fromArray(FLOATS, prefRow, base + j), cells)
+            .mul(materialCost).div(totalPref);                          // 0 where x[i][j] == 0
+        IntVector ceiling = ceil(share);
+        IntVector.fromArray(INTS, costByDept, j).add(ceiling).intoArray(costByDept, j);
+      }
+      for (; j < deptNum; ++j) {
+        if (row[j] == 1)
+          costByDept[j] += (int) Math.ceil(prefRow[base + j] * materialCost / totalPref);
+      }
+    }
+    result[0] = instance.objectiveFromSums(prefByDept, numByDept, costByDept, p);
+    result[1] = instance.penaltyFromSums(costByDept, numByCategory);
+  }
+
+  // x[i][j] * preference[i][j] for 0/1 cells: keep the bits of @pref where the cell is 1, zero elsewhere
+  private static FloatVector select(FloatVector pref, IntVector cells) {
+    return pref.reinterpretAsInts().and(cells.neg()).reinterpretAsFloats();
+  }
+
+  // Lane-wise ceil of shares in [0, 2^22)
+  // Adding 2^23 rounds a share to an integer r held in the low mantissa bits;
+  // one is added where the share is above r, that is where share - r is a positive float
+  private static IntVector ceil(FloatVector share) {
+    FloatVector shifted = share.add(ROUNDING);
+    IntVector rounded = shifted.reinterpretAsInts().sub(ROUNDING_BITS);
+    IntVector above = share.sub(shifted.sub(ROUNDING)).reinterpretAsInts().max(0).min(1);
+    return rounded.add(above);
+  }
+}